@@ -1,88 +1,482 @@
 public class Algorithm {
 
+	// 2^27 + 1, splits a double into two halves whose products are exact
+	private static final double SPLIT = 134217729.0;
+	
+	// kernels behind the row methods
+	private static final int ROW_ESCAPE_TIME = 0;
+	private static final int ROW_NORMALISED_ITERATION_COUNT = 1;
+	private static final int ROW_BURNING_SHIP_FRACTAL = 2;
+
 	public static int escapeTime(double x, double y, double maxRadius, int maxIter) {
+		return escapeTime(x, y, maxRadius, maxIter, 0);
+	}
+	
+	/**
+	 * Escape time of a point, an orbit that comes back within epsilon of an
+	 * earlier point of itself is taken to be periodic and never to escape
+	 * 
+	 * @param epsilon is the periodicity tolerance, zero only accepts exact
+	 * repeats
+	 */
+	public static int escapeTime(double x, double y, double maxRadius, int maxIter, double epsilon) {
 		double x0 = x;
 		double y0 = y;
 		int iteration = 0;
 		double maxRadiusSquared = maxRadius * maxRadius;
 		
+		// earlier point of the orbit that periodicity is checked against
+		double xs = x, ys = y;
+		
 		// compute sequence terms until one "escapes"
 		while (x * x + y * y < maxRadiusSquared && iteration < maxIter) {
 			double xt = x * x - y * y + x0;
 			double yt = 2 * x * y + y0;
 			
-			// implement wikipedia's periodic checking
-			if (x == xt && y == yt) {
-				iteration = maxIter;
-				break;
-			}
-			
 			x = xt;
 			y = yt;
 			
 			iteration += 1;
+			
+			// Brent's periodicity checking, the earlier point moves on
+			// whenever the iteration count reaches a power of two
+			if (Math.abs(x - xs) + Math.abs(y - ys) <= epsilon) {
+				iteration = maxIter;
+				break;
+			}
+			if ((iteration & (iteration - 1)) == 0) {
+				xs = x;
+				ys = y;
+			}
 		}
 						
 		return iteration;
 	}
 	
 	public static double normalisedIterationCount(double x, double y, double maxRadius, int maxIter) {
+		return normalisedIterationCount(x, y, maxRadius, maxIter, 0);
+	}
+	
+	public static double normalisedIterationCount(double x, double y, double maxRadius, int maxIter, double epsilon) {
 		double x0 = x;
 		double y0 = y;
-		double iteration = 0;
+		int iteration = 0;
 		double maxRadiusSquared = maxRadius * maxRadius;
 		
+		// earlier point of the orbit that periodicity is checked against
+		double xs = x, ys = y;
+		
 		// compute sequence terms until one "escapes"
 		while (x * x + y * y < maxRadiusSquared && iteration < maxIter) {
 			double xt = x * x - y * y + x0;
 			double yt = 2 * x * y + y0;
 			
-			// implement Wikipedia's periodic checking
-			if (x == xt && y == yt) {
-				iteration = maxIter;
-				break;
-			}
-			
 			x = xt;
 			y = yt;
 			
 			iteration += 1;
+			
+			// Brent's periodicity checking, the earlier point moves on
+			// whenever the iteration count reaches a power of two
+			if (Math.abs(x - xs) + Math.abs(y - ys) <= epsilon) {
+				iteration = maxIter;
+				break;
+			}
+			if ((iteration & (iteration - 1)) == 0) {
+				xs = x;
+				ys = y;
+			}
 		}
 		
-        if (iteration < maxIter) {
-            double zn_abs = Math.sqrt(x * x + y * y);
-            double u = Math.log(Math.log(zn_abs) / Math.log(maxRadiusSquared)) /
-                Math.log(2);
-            iteration += 1 - Math.min(u, 1);
-        }
-        
-		return Math.min(iteration, maxIter);
+		return smooth(iteration, x, y, maxRadiusSquared, maxIter);
 	}
 	
 	public static int burningShipFractal(double x, double y, double maxRadius, int maxIter) {
+		return burningShipFractal(x, y, maxRadius, maxIter, 0);
+	}
+	
+	public static int burningShipFractal(double x, double y, double maxRadius, int maxIter, double epsilon) {
 		double x0 = x;
 		double y0 = y;
 		int iteration = 0;
 		double maxRadiusSquared = maxRadius * maxRadius;
 		
+		// earlier point of the orbit that periodicity is checked against
+		double xs = x, ys = y;
+		
 		// compute sequence terms until one "escapes"
 		while (x * x + y * y < maxRadiusSquared && iteration < maxIter) {            
 			double xt = x * x - y * y - x0;
 			double yt = 2 * Math.abs(x * y) - y0;
 			
-			// implement wikipedia's periodic checking
-			if (x == xt && y == yt) {
+			x = xt;
+			y = yt;
+			
+			iteration += 1;
+			
+			// Brent's periodicity checking, the earlier point moves on
+			// whenever the iteration count reaches a power of two
+			if (Math.abs(x - xs) + Math.abs(y - ys) <= epsilon) {
 				iteration = maxIter;
 				break;
 			}
+			if ((iteration & (iteration - 1)) == 0) {
+				xs = x;
+				ys = y;
+			}
+		}
+		
+		return iteration;
+	}
+	
+	/**
+	 * Whether a point lies in the main cardioid or the period 2 bulb of the
+	 * Mandelbrot set, where no point escapes
+	 */
+	public static boolean isInside(double x, double y) {
+		double p = Math.sqrt(Math.pow(x - (1d / 4d), 2) + y * y);
+
+		// cardoid bulb checking courtesy Wikipedia
+		return x < (p - 2 * p * p + (1d / 4d))
+				|| Math.pow(x + 1, 2) + (y * y) < (1d / 16d);
+	}
+	
+	/**
+	 * Escape times of a run of points sharing an imaginary part, matching
+	 * escapeTime for each point
+	 * 
+	 * @param x holds the real parts of the points
+	 * @param y is the shared imaginary part
+	 * @param count is the number of points in x
+	 * @param result receives the iteration counts, and may be x itself
+	 */
+	public static void escapeTime(double[] x, double y, int count, double maxRadius, int maxIter, double epsilon, double[] result) {
+		row(x, y, count, maxRadius, maxIter, epsilon, ROW_ESCAPE_TIME, result);
+	}
+	
+	public static void normalisedIterationCount(double[] x, double y, int count, double maxRadius, int maxIter, double epsilon, double[] result) {
+		row(x, y, count, maxRadius, maxIter, epsilon, ROW_NORMALISED_ITERATION_COUNT, result);
+	}
+	
+	public static void burningShipFractal(double[] x, double y, int count, double maxRadius, int maxIter, double epsilon, double[] result) {
+		row(x, y, count, maxRadius, maxIter, epsilon, ROW_BURNING_SHIP_FRACTAL, result);
+	}
+	
+	private static void row(double[] x, double y, int count, double maxRadius, int maxIter, double epsilon, int kind, double[] result) {
+		final double maxRadiusSquared = maxRadius * maxRadius;
+		final boolean burning = kind == ROW_BURNING_SHIP_FRACTAL;
+		final boolean normalised = kind == ROW_NORMALISED_ITERATION_COUNT;
+		
+		// the burning ship subtracts the point where the others add it
+		final double sign = burning ? -1 : 1;
+		final double cy = sign * y;
+		
+		// four independent points are iterated side by side so that their
+		// dependency chains overlap, a lane that finishes is refilled with
+		// the next point, and lanes without a point (index -1) are masked
+		int p0 = -1, p1 = -1, p2 = -1, p3 = -1;
+		double x0 = 0, x1 = 0, x2 = 0, x3 = 0;
+		double y0 = 0, y1 = 0, y2 = 0, y3 = 0;
+		double c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+		int n0 = 0, n1 = 0, n2 = 0, n3 = 0;
+		double xs0 = 0, xs1 = 0, xs2 = 0, xs3 = 0;
+		double ys0 = 0, ys1 = 0, ys2 = 0, ys3 = 0;
+		int next = 0;
+		
+		while (true) {
+			if (p0 < 0 && next < count) {
+				p0 = next;
+				x0 = x[next++];
+				c0 = sign * x0;
+				y0 = y;
+				n0 = 0;
+				xs0 = x0;
+				ys0 = y;
+			}
+			if (p1 < 0 && next < count) {
+				p1 = next;
+				x1 = x[next++];
+				c1 = sign * x1;
+				y1 = y;
+				n1 = 0;
+				xs1 = x1;
+				ys1 = y;
+			}
+			if (p2 < 0 && next < count) {
+				p2 = next;
+				x2 = x[next++];
+				c2 = sign * x2;
+				y2 = y;
+				n2 = 0;
+				xs2 = x2;
+				ys2 = y;
+			}
+			if (p3 < 0 && next < count) {
+				p3 = next;
+				x3 = x[next++];
+				c3 = sign * x3;
+				y3 = y;
+				n3 = 0;
+				xs3 = x3;
+				ys3 = y;
+			}
+			
+			// every lane is empty once the run is done
+			if ((p0 & p1 & p2 & p3) < 0)
+				break;
+			
+			while (true) {
+				final double a0 = x0 * x0, b0 = y0 * y0;
+				final double a1 = x1 * x1, b1 = y1 * y1;
+				final double a2 = x2 * x2, b2 = y2 * y2;
+				final double a3 = x3 * x3, b3 = y3 * y3;
+				
+				// results are written behind the points still to be read
+				if (p0 >= 0 && (a0 + b0 >= maxRadiusSquared || n0 >= maxIter)) {
+					result[p0] = normalised ? smooth(n0, x0, y0, maxRadiusSquared, maxIter) : n0;
+					p0 = -1;
+				}
+				if (p1 >= 0 && (a1 + b1 >= maxRadiusSquared || n1 >= maxIter)) {
+					result[p1] = normalised ? smooth(n1, x1, y1, maxRadiusSquared, maxIter) : n1;
+					p1 = -1;
+				}
+				if (p2 >= 0 && (a2 + b2 >= maxRadiusSquared || n2 >= maxIter)) {
+					result[p2] = normalised ? smooth(n2, x2, y2, maxRadiusSquared, maxIter) : n2;
+					p2 = -1;
+				}
+				if (p3 >= 0 && (a3 + b3 >= maxRadiusSquared || n3 >= maxIter)) {
+					result[p3] = normalised ? smooth(n3, x3, y3, maxRadiusSquared, maxIter) : n3;
+					p3 = -1;
+				}
+				
+				// refill as soon as a lane is free, or drain the last points
+				if (next < count ? (p0 | p1 | p2 | p3) < 0 : (p0 & p1 & p2 & p3) < 0)
+					break;
+				
+				final double xy0 = burning ? Math.abs(x0 * y0) : x0 * y0;
+				final double xy1 = burning ? Math.abs(x1 * y1) : x1 * y1;
+				final double xy2 = burning ? Math.abs(x2 * y2) : x2 * y2;
+				final double xy3 = burning ? Math.abs(x3 * y3) : x3 * y3;
+				
+				final double xt0 = a0 - b0 + c0, yt0 = 2 * xy0 + cy;
+				final double xt1 = a1 - b1 + c1, yt1 = 2 * xy1 + cy;
+				final double xt2 = a2 - b2 + c2, yt2 = 2 * xy2 + cy;
+				final double xt3 = a3 - b3 + c3, yt3 = 2 * xy3 + cy;
+				
+				x0 = xt0;
+				y0 = yt0;
+				x1 = xt1;
+				y1 = yt1;
+				x2 = xt2;
+				y2 = yt2;
+				x3 = xt3;
+				y3 = yt3;
+				
+				// Brent's periodicity checking as in escapeTime
+				if (Math.abs(x0 - xs0) + Math.abs(y0 - ys0) <= epsilon)
+					n0 = maxIter;
+				else if ((++n0 & (n0 - 1)) == 0) {
+					xs0 = x0;
+					ys0 = y0;
+				}
+				if (Math.abs(x1 - xs1) + Math.abs(y1 - ys1) <= epsilon)
+					n1 = maxIter;
+				else if ((++n1 & (n1 - 1)) == 0) {
+					xs1 = x1;
+					ys1 = y1;
+				}
+				if (Math.abs(x2 - xs2) + Math.abs(y2 - ys2) <= epsilon)
+					n2 = maxIter;
+				else if ((++n2 & (n2 - 1)) == 0) {
+					xs2 = x2;
+					ys2 = y2;
+				}
+				if (Math.abs(x3 - xs3) + Math.abs(y3 - ys3) <= epsilon)
+					n3 = maxIter;
+				else if ((++n3 & (n3 - 1)) == 0) {
+					xs3 = x3;
+					ys3 = y3;
+				}
+			}
+		}
+	}
+	
+	public static int floatEscapeTime(float x, float y, float maxRadius, int maxIter, float epsilon) {
+		float x0 = x;
+		float y0 = y;
+		int iteration = 0;
+		float maxRadiusSquared = maxRadius * maxRadius;
+		
+		// earlier point of the orbit that periodicity is checked against
+		float xs = x, ys = y;
+		
+		// compute sequence terms until one "escapes"
+		while (x * x + y * y < maxRadiusSquared && iteration < maxIter) {
+			float xt = x * x - y * y + x0;
+			float yt = 2 * x * y + y0;
 			
 			x = xt;
 			y = yt;
 			
 			iteration += 1;
+			
+			// Brent's periodicity checking, the earlier point moves on
+			// whenever the iteration count reaches a power of two
+			if (Math.abs(x - xs) + Math.abs(y - ys) <= epsilon) {
+				iteration = maxIter;
+				break;
+			}
+			if ((iteration & (iteration - 1)) == 0) {
+				xs = x;
+				ys = y;
+			}
 		}
+						
+		return iteration;
+	}
+	
+	public static double floatNormalisedIterationCount(float x, float y, float maxRadius, int maxIter, float epsilon) {
+		float x0 = x;
+		float y0 = y;
+		int iteration = 0;
+		float maxRadiusSquared = maxRadius * maxRadius;
+		
+		// earlier point of the orbit that periodicity is checked against
+		float xs = x, ys = y;
 		
-		return 0;
+		// compute sequence terms until one "escapes"
+		while (x * x + y * y < maxRadiusSquared && iteration < maxIter) {
+			float xt = x * x - y * y + x0;
+			float yt = 2 * x * y + y0;
+			
+			x = xt;
+			y = yt;
+			
+			iteration += 1;
+			
+			// Brent's periodicity checking, the earlier point moves on
+			// whenever the iteration count reaches a power of two
+			if (Math.abs(x - xs) + Math.abs(y - ys) <= epsilon) {
+				iteration = maxIter;
+				break;
+			}
+			if ((iteration & (iteration - 1)) == 0) {
+				xs = x;
+				ys = y;
+			}
+		}
+		
+		return smooth(iteration, x, y, maxRadius * maxRadius, maxIter);
+	}
+	
+	/**
+	 * Escape time of a point given as double-doubles, where each coordinate is
+	 * the unevaluated sum of a high and a low double (about 106 bits)
+	 */
+	public static int doubleDoubleEscapeTime(double xHi, double xLo, double yHi, double yLo, double maxRadius, int maxIter, double epsilon) {
+		return (int) doubleDouble(xHi, xLo, yHi, yLo, maxRadius, maxIter, epsilon, false);
+	}
+	
+	public static double doubleDoubleNormalisedIterationCount(double xHi, double xLo, double yHi, double yLo, double maxRadius, int maxIter, double epsilon) {
+		return doubleDouble(xHi, xLo, yHi, yLo, maxRadius, maxIter, epsilon, true);
+	}
+	
+	private static double doubleDouble(double xHi, double xLo, double yHi, double yLo, double maxRadius, int maxIter, double epsilon, boolean normalised) {
+		final double x0Hi = xHi, x0Lo = xLo;
+		final double y0Hi = yHi, y0Lo = yLo;
+		int iteration = 0;
+		double maxRadiusSquared = maxRadius * maxRadius;
+		
+		// earlier point of the orbit that periodicity is checked against
+		double xsHi = xHi, xsLo = xLo;
+		double ysHi = yHi, ysLo = yLo;
+		
+		// everything is kept in locals, double-double products use Dekker's
+		// split as there is no fused multiply-add to lean on
+		while (iteration < maxIter) {
+			// x^2 exactly as p + e
+			double t = SPLIT * xHi;
+			final double xh = t - (t - xHi), xl = xHi - xh;
+			double p = xHi * xHi;
+			double e = ((xh * xh - p) + 2 * xh * xl) + xl * xl + 2 * xHi * xLo;
+			final double x2Hi = p + e;
+			final double x2Lo = e - (x2Hi - p);
+			
+			// y^2
+			t = SPLIT * yHi;
+			final double yh = t - (t - yHi), yl = yHi - yh;
+			p = yHi * yHi;
+			e = ((yh * yh - p) + 2 * yh * yl) + yl * yl + 2 * yHi * yLo;
+			final double y2Hi = p + e;
+			final double y2Lo = e - (y2Hi - p);
+			
+			// the high parts are plenty to decide on escaping
+			if (x2Hi + y2Hi >= maxRadiusSquared)
+				break;
+			
+			// x * y
+			p = xHi * yHi;
+			e = ((xh * yh - p) + xh * yl + xl * yh) + xl * yl + xHi * yLo + xLo * yHi;
+			final double xyHi = p + e;
+			final double xyLo = e - (xyHi - p);
+			
+			// xt = x^2 - y^2 + x0
+			double s = x2Hi - y2Hi;
+			double b = s - x2Hi;
+			e = (x2Hi - (s - b)) + (-y2Hi - b) + x2Lo - y2Lo;
+			double hi = s + e;
+			double lo = e - (hi - s);
+			s = hi + x0Hi;
+			b = s - hi;
+			e = (hi - (s - b)) + (x0Hi - b) + lo + x0Lo;
+			final double xtHi = s + e;
+			final double xtLo = e - (xtHi - s);
+			
+			// yt = 2 x y + y0, doubling is exact
+			s = 2 * xyHi + y0Hi;
+			b = s - 2 * xyHi;
+			e = (2 * xyHi - (s - b)) + (y0Hi - b) + 2 * xyLo + y0Lo;
+			final double ytHi = s + e;
+			final double ytLo = e - (ytHi - s);
+			
+			xHi = xtHi;
+			xLo = xtLo;
+			yHi = ytHi;
+			yLo = ytLo;
+			
+			iteration += 1;
+			
+			// Brent's periodicity checking as in escapeTime, the high parts
+			// of nearby points cancel exactly, leaving the low parts to
+			// carry the difference
+			if (Math.abs((xHi - xsHi) + (xLo - xsLo))
+					+ Math.abs((yHi - ysHi) + (yLo - ysLo)) <= epsilon) {
+				iteration = maxIter;
+				break;
+			}
+			if ((iteration & (iteration - 1)) == 0) {
+				xsHi = xHi;
+				xsLo = xLo;
+				ysHi = yHi;
+				ysLo = yLo;
+			}
+		}
+		
+		if (!normalised)
+			return iteration;
+		
+		return smooth(iteration, xHi + xLo, yHi + yLo, maxRadiusSquared, maxIter);
+	}
+	
+	private static double smooth(double iteration, double x, double y, double maxRadiusSquared, int maxIter) {
+        if (iteration < maxIter) {
+            double zn_abs = Math.sqrt(x * x + y * y);
+            double u = Math.log(Math.log(zn_abs) / Math.log(maxRadiusSquared)) /
+                Math.log(2);
+            iteration += 1 - Math.min(u, 1);
+        }
+        
+		return Math.min(iteration, maxIter);
 	}
 	
 //	public static int bigDecimalEscapeTime(double x, double y, double maxRadius, int maxIter) {
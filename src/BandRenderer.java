@@ -0,0 +1,407 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * Renders images of any size in horizontal bands, which are computed in
+ * parallel and written out in order as they complete
+ * Only as many bands are kept in memory as fit the memory limit, so the
+ * image is never held as a whole as it is by Model
+ * Pixels are computed as Model computes them, in double precision or in
+ * double-doubles once doubles no longer resolve them, and relative to a
+ * single reference orbit at the centre pixel for perturbation
+ */
+public class BandRenderer {
+
+	// ==== Constants ====
+
+	/**
+	 * PNG, 8 bit RGB
+	 */
+	public static final int FORMAT_PNG = 0;
+
+	/**
+	 * Binary PPM, a short header followed by raw 8 bit RGB
+	 */
+	public static final int FORMAT_PPM = 1;
+
+	/**
+	 * Largest number of rows in a band
+	 */
+	private static final int BAND_HEIGHT = 64;
+
+	// ==== Properties ====
+
+	private final int width;
+	private final int height;
+	private final double scale;
+
+	// the corner as a column and a row of the pixel grid of the plane,
+	// rows counting downwards, and as a point
+	private final BigInteger column;
+	private final BigInteger row;
+	private final BigDecimal cornerX;
+	private final BigDecimal cornerY;
+
+	private int algorithm = Model.ALGORITHM_NORMALISED_ITERATION_COUNT;
+	private int palette = Palette.PALETTE_HSB;
+	private int maxIteration = 1000;
+	private double maxRadius = 10;
+	private boolean cardoidBulbCheck = true;
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+	private long memoryLimit = 256L << 20;
+
+	// ==== Constructor ====
+
+	/**
+	 * Sets up the view of an image, centred as Model.show() centres it
+	 *
+	 * @param width is the width of the image in pixels
+	 * @param height is the height of the image in pixels
+	 * @param x is the real part of the centre
+	 * @param y is the imaginary part of the centre
+	 * @param scale is the distance between pixels
+	 */
+	public BandRenderer(int width, int height, BigDecimal x, BigDecimal y,
+			double scale) {
+		if (width < 1 || height < 1)
+			throw new IllegalArgumentException("size " + width + "x" + height
+					+ " is empty");
+		if (!(scale > 0))
+			throw new IllegalArgumentException("scale " + scale
+					+ " is not positive");
+
+		this.width = width;
+		this.height = height;
+		this.scale = scale;
+
+		// the corner on the pixel grid of the plane, as Model places it
+		final BigDecimal unit = new BigDecimal(scale);
+		column = Model.snapColumn(x, scale, width);
+		row = Model.snapRow(y, scale, height);
+		cornerX = new BigDecimal(column).multiply(unit);
+		cornerY = new BigDecimal(row.negate()).multiply(unit);
+	}
+
+	// ==== Accessors ====
+
+	public final int getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * Sets one of the Model.ALGORITHM_ constants
+	 */
+	public final void setAlgorithm(int algorithm) {
+		if (algorithm < Model.ALGORITHM_ESCAPE_TIME
+				|| algorithm > Model.ALGORITHM_PERTURBATION)
+			throw new IllegalArgumentException("algorithm " + algorithm
+					+ " does not exist");
+
+		this.algorithm = algorithm;
+	}
+
+	public final int getPalette() {
+		return palette;
+	}
+
+	public final void setPalette(int palette) {
+		if (palette < 0 || palette >= Palette.PALETTE_COUNT)
+			throw new IllegalArgumentException("palette " + palette
+					+ " does not exist");
+
+		this.palette = palette;
+	}
+
+	public final int getMaxIteration() {
+		return maxIteration;
+	}
+
+	public final void setMaxIteration(int maxIteration) {
+		if (maxIteration < 0)
+			throw new IllegalArgumentException(
+					"maxIterations cannot be less than 0");
+
+		this.maxIteration = maxIteration;
+	}
+
+	public final double getMaxRadius() {
+		return maxRadius;
+	}
+
+	public final void setMaxRadius(double maxRadius) {
+		if (maxRadius < 0)
+			throw new IllegalArgumentException(
+					"maxRadius cannot be less than 0");
+
+		this.maxRadius = maxRadius;
+	}
+
+	public final boolean getCardoidBulbCheck() {
+		return cardoidBulbCheck;
+	}
+
+	public final void setCardoidBulbCheck(boolean cardoidBulbCheck) {
+		this.cardoidBulbCheck = cardoidBulbCheck;
+	}
+
+	public final int getThreadCount() {
+		return threadCount;
+	}
+
+	public final void setThreadCount(int threadCount) {
+		if (threadCount < 1)
+			throw new IllegalArgumentException(
+					"threadCount cannot be less than 1");
+
+		this.threadCount = threadCount;
+	}
+
+	public final long getMemoryLimit() {
+		return memoryLimit;
+	}
+
+	/**
+	 * Sets the memory the bands in flight may take up, in bytes, at least a
+	 * row per thread is always used
+	 */
+	public final void setMemoryLimit(long memoryLimit) {
+		if (memoryLimit < 0)
+			throw new IllegalArgumentException("memoryLimit " + memoryLimit
+					+ " is negative");
+
+		this.memoryLimit = memoryLimit;
+	}
+
+	/**
+	 * Number of rows in a band within the memory limit
+	 */
+	public final int getBandHeight() {
+		// leave room for twice as many bands as threads
+		final long rows = memoryLimit / (2L * threadCount * getRowBytes());
+		return (int) Math.max(1, Math.min(rows, BAND_HEIGHT));
+	}
+
+	/**
+	 * Number of bands computed or waiting to be written at any one time
+	 */
+	public final int getBandsInFlight() {
+		final long bands = memoryLimit / (getBandHeight() * getRowBytes());
+		return (int) Math.max(1, Math.min(bands, 2L * threadCount));
+	}
+
+	// ==== Public Methods ====
+
+	/**
+	 * Renders the image and writes it out
+	 *
+	 * @param out receives the image, and is closed once it is written
+	 * @param format is one of the FORMAT_ constants
+	 * @throws IOException if the image cannot be written
+	 */
+	public void render(OutputStream out, int format) throws IOException {
+		if (format != FORMAT_PNG && format != FORMAT_PPM)
+			throw new IllegalArgumentException("format " + format
+					+ " does not exist");
+
+		final Palette colours = new Palette(palette, maxIteration);
+		final int bandHeight = getBandHeight();
+		final int inFlight = getBandsInFlight();
+		final double magnitude = Model.getMagnitude(cornerX.doubleValue(),
+				cornerY.doubleValue(), width, height, scale);
+		final boolean doubleDouble = Model.selectPrecision(
+				Model.PRECISION_AUTO, scale, magnitude) == Model.PRECISION_DOUBLE_DOUBLE
+				&& algorithm != Model.ALGORITHM_BURNING_SHIP_FRACTAL;
+
+		// every band iterates relative to the one reference orbit, computed
+		// before any band starts
+		final PerturbationAlgorithm reference = Model.selectPerturbation(
+				algorithm, false, scale, magnitude) ? new PerturbationAlgorithm(
+				cornerX.add(new BigDecimal(width / 2 * scale)),
+				cornerY.subtract(new BigDecimal(height / 2 * scale)),
+				maxRadius, maxIteration, Model.getDigits(scale), scale
+						* Model.PERIODICITY_EPSILON)
+				: null;
+
+		final ForkJoinPool pool = new ForkJoinPool(threadCount);
+		final ArrayDeque<Future<int[]>> bands = new ArrayDeque<Future<int[]>>();
+
+		PngWriter png = null;
+		byte[] raw = null;
+
+		try {
+			if (format == FORMAT_PNG) {
+				png = new PngWriter(out, width, height, Deflater.BEST_SPEED);
+			} else {
+				out.write(("P6\n" + width + " " + height + "\n255\n")
+						.getBytes("US-ASCII"));
+				raw = new byte[3 * width];
+			}
+
+			int next = 0;
+
+			for (int y = 0; y < height; y += bandHeight) {
+				// keep the pool busy with the bands after the one written next
+				while (bands.size() < inFlight && next < height) {
+					bands.add(pool.submit(new Band(next, Math.min(next
+							+ bandHeight, height), colours, doubleDouble,
+							reference)));
+					next += bandHeight;
+				}
+
+				final int[] rgb = bands.remove().get();
+				final int rows = rgb.length / width;
+
+				if (png != null) {
+					png.write(rgb, rows);
+				} else {
+					for (int i = 0; i < rgb.length;) {
+						for (int j = 0; j < raw.length; i++) {
+							raw[j++] = (byte) (rgb[i] >> 16);
+							raw[j++] = (byte) (rgb[i] >> 8);
+							raw[j++] = (byte) rgb[i];
+						}
+
+						out.write(raw);
+					}
+				}
+			}
+
+			if (png != null)
+				png.close();
+		} catch (InterruptedException e) {
+			throw new IOException("render interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IOException("render failed", e.getCause());
+		} finally {
+			pool.shutdownNow();
+			out.close();
+		}
+	}
+
+	// ==== Private Helper Methods ====
+
+	private long getRowBytes() {
+		// colours of a row, and the values of a row while it is iterated
+		return 4L * width + 12L * width;
+	}
+
+	// ==== Band ====
+
+	// computes the colours of a run of rows
+	private class Band implements Callable<int[]> {
+		private final int top, bottom;
+		private final Palette colours;
+		private final boolean doubleDouble;
+		private final PerturbationAlgorithm reference;
+
+		public Band(int top, int bottom, Palette colours,
+				boolean doubleDouble, PerturbationAlgorithm reference) {
+			this.top = top;
+			this.bottom = bottom;
+			this.colours = colours;
+			this.doubleDouble = doubleDouble;
+			this.reference = reference;
+		}
+
+		@Override
+		public int[] call() {
+			final int[] rgb = new int[width * (bottom - top)];
+			final double[] values = new double[width];
+			final int[] columns = new int[width];
+
+			// orbits returning within a fraction of a pixel are periodic
+			final double epsilon = scale * Model.PERIODICITY_EPSILON;
+			final boolean check = cardoidBulbCheck
+					&& algorithm != Model.ALGORITHM_BURNING_SHIP_FRACTAL;
+
+			// a pixel's coordinates come from its place on the grid of the
+			// plane, as in Model
+			final double originX = column.doubleValue();
+			final double originY = row.doubleValue();
+
+			for (int y = top; y < bottom; y++) {
+				final int offset = (y - top) * width;
+
+				if (reference != null) {
+					// offsets of the pixels from the reference at the centre,
+					// every pixel is iterated as in Model
+					final double dy = (height / 2 - y) * scale;
+
+					for (int x = 0; x < width; x++) {
+						final double dx = (x - width / 2) * scale;
+						rgb[offset + x] = colours.getColour(reference
+								.normalisedIterationCount(dx, dy));
+					}
+
+					continue;
+				}
+
+				if (doubleDouble) {
+					computeRow(y, values);
+
+					for (int x = 0; x < width; x++)
+						rgb[offset + x] = colours.getColour(values[x]);
+
+					continue;
+				}
+
+				// points inside the cardioid and bulb are not iterated
+				final double cy = -(originY + y) * scale;
+				int count = 0;
+
+				for (int x = 0; x < width; x++) {
+					final double cx = (originX + x) * scale;
+
+					if (check && Algorithm.isInside(cx, cy)) {
+						rgb[offset + x] = colours.getColour(maxIteration);
+					} else {
+						values[count] = cx;
+						columns[count++] = x;
+					}
+				}
+
+				switch (algorithm) {
+				case Model.ALGORITHM_ESCAPE_TIME:
+					Algorithm.escapeTime(values, cy, count, maxRadius,
+							maxIteration, epsilon, values);
+					break;
+				case Model.ALGORITHM_BURNING_SHIP_FRACTAL:
+					Algorithm.burningShipFractal(values, cy, count, maxRadius,
+							maxIteration, epsilon, values);
+					break;
+				default:
+					Algorithm.normalisedIterationCount(values, cy, count,
+							maxRadius, maxIteration, epsilon, values);
+					break;
+				}
+
+				for (int i = 0; i < count; i++)
+					rgb[offset + columns[i]] = colours.getColour(values[i]);
+			}
+
+			return rgb;
+		}
+
+		private void computeRow(int y, double[] values) {
+			final double epsilon = scale * Model.PERIODICITY_EPSILON;
+			final double cornerXHi = cornerX.doubleValue();
+			final double cornerXLo = Model.getLow(cornerX);
+			final double cornerYHi = cornerY.doubleValue();
+			final double cornerYLo = Model.getLow(cornerY);
+
+			for (int x = 0; x < width; x++) {
+				values[x] = Model.iterateDoubleDouble(algorithm, cornerXHi,
+						cornerXLo, cornerYHi, cornerYLo, x * scale, -y
+								* scale, maxRadius, maxIteration, epsilon);
+			}
+		}
+	}
+}
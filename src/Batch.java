@@ -0,0 +1,230 @@
+import java.awt.Dimension;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Renders a single image from the command line without a window, for
+ * posters and thumbnails on machines without a display
+ * The Model is driven without observers, so no Swing timer or component is
+ * ever started
+ */
+public class Batch {
+
+	// ==== Constants ====
+
+	private static final String USAGE = "usage: java Batch [options] output.png\n"
+			+ "  -x <real>          real part of the centre (default -0.75)\n"
+			+ "  -y <imaginary>     imaginary part of the centre (default 0)\n"
+			+ "  -s <scale>         distance between pixels (default fits the set)\n"
+			+ "  -w <width>         width in pixels (default 1920)\n"
+			+ "  -h <height>        height in pixels (default 1080)\n"
+			+ "  -a <algorithm>     escape, normalised, burning or perturbation (default normalised)\n"
+			+ "  -i <iterations>    maximum number of iterations (default 1000)\n"
+			+ "  -r <radius>        escape radius (default 10)\n"
+			+ "  -p <palette>       hsb, fire, gradient or greyscale (default hsb)\n"
+			+ "  -t <threads>       number of threads (default all cores)\n"
+			+ "  -m <megabytes>     stream bands within this memory instead of holding\n"
+			+ "                     the whole image, output must be .png or .ppm";
+
+	private static final String[] ALGORITHMS = { "escape", "normalised",
+			"burning", "perturbation" };
+	private static final String[] PALETTES = { "hsb", "fire", "gradient",
+			"greyscale" };
+
+	// ==== Main ====
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		try {
+			System.exit(run(args));
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+	}
+
+	// ==== Private Helper Methods ====
+
+	private static int run(String[] args) {
+		BigDecimal x = BigDecimal.valueOf(-0.75), y = BigDecimal.ZERO;
+		double scale = 0;
+		int width = 1920, height = 1080;
+		int algorithm = Model.ALGORITHM_NORMALISED_ITERATION_COUNT;
+		int maxIteration = 1000;
+		double maxRadius = 10;
+		int palette = Palette.PALETTE_HSB;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long memory = 0;
+		File output = null;
+
+		for (int i = 0; i < args.length; i++) {
+			final String arg = args[i];
+
+			if (!arg.startsWith("-") || arg.length() != 2) {
+				if (output != null)
+					throw new IllegalArgumentException("unexpected " + arg);
+
+				output = new File(arg);
+				continue;
+			}
+
+			if (i + 1 == args.length)
+				throw new IllegalArgumentException(arg + " needs a value");
+
+			final String value = args[++i];
+
+			try {
+				switch (arg.charAt(1)) {
+				case 'x':
+					x = new BigDecimal(value);
+					break;
+				case 'y':
+					y = new BigDecimal(value);
+					break;
+				case 's':
+					scale = Double.parseDouble(value);
+					break;
+				case 'w':
+					width = Integer.parseInt(value);
+					break;
+				case 'h':
+					height = Integer.parseInt(value);
+					break;
+				case 'a':
+					algorithm = indexOf(ALGORITHMS, value);
+					break;
+				case 'i':
+					maxIteration = Integer.parseInt(value);
+					break;
+				case 'r':
+					maxRadius = Double.parseDouble(value);
+					break;
+				case 'p':
+					palette = indexOf(PALETTES, value);
+					break;
+				case 't':
+					threads = Integer.parseInt(value);
+					break;
+				case 'm':
+					memory = Long.parseLong(value) << 20;
+					break;
+				default:
+					throw new IllegalArgumentException("unknown option " + arg);
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(arg + " is not a number: "
+						+ value);
+			}
+		}
+
+		if (output == null)
+			throw new IllegalArgumentException("no output file");
+		if (width < 1 || height < 1)
+			throw new IllegalArgumentException("size " + width + "x" + height
+					+ " is empty");
+
+		// fit the whole set by default
+		if (scale == 0)
+			scale = Math.max(3.5 / width, 2.5 / height);
+
+		final String name = output.getName();
+		final String format = name.substring(name.lastIndexOf('.') + 1);
+
+		if (memory > 0)
+			return stream(x, y, scale, width, height, algorithm, maxIteration,
+					maxRadius, palette, threads, memory, output, format);
+
+		// set everything up before the one render
+		final Model model = new Model();
+		model.getMetrics().register("batch");
+		model.setReady(false);
+		model.setThreadCount(threads);
+		model.setSize(new Dimension(width, height));
+		model.setAlgorithm(algorithm);
+		model.setMaxIteration(maxIteration);
+		model.setMaxRadius(maxRadius);
+		model.setPalette(palette);
+		model.show(x, y, scale);
+
+		final long start = System.nanoTime();
+
+		try {
+			model.setReady(true);
+			model.waitForRender();
+		} catch (InterruptedException e) {
+			return 1;
+		}
+
+		final double seconds = (System.nanoTime() - start) / 1e9;
+
+		try {
+			if (!ImageIO.write(model.getImage(), format, output)) {
+				System.err.println("no writer for " + format + " images");
+				return 1;
+			}
+		} catch (IOException e) {
+			System.err.println("cannot write " + output + ": " + e.getMessage());
+			return 1;
+		}
+
+		report(width, height, seconds);
+		return 0;
+	}
+
+	private static int stream(BigDecimal x, BigDecimal y, double scale,
+			int width, int height, int algorithm, int maxIteration,
+			double maxRadius, int palette, int threads, long memory,
+			File output, String format) {
+		final BandRenderer renderer = new BandRenderer(width, height, x, y,
+				scale);
+		renderer.setAlgorithm(algorithm);
+		renderer.setMaxIteration(maxIteration);
+		renderer.setMaxRadius(maxRadius);
+		renderer.setPalette(palette);
+		renderer.setThreadCount(threads);
+		renderer.setMemoryLimit(memory);
+
+		final int type;
+		if (format.equalsIgnoreCase("png"))
+			type = BandRenderer.FORMAT_PNG;
+		else if (format.equalsIgnoreCase("ppm"))
+			type = BandRenderer.FORMAT_PPM;
+		else
+			throw new IllegalArgumentException("cannot stream " + format
+					+ " images");
+
+		final long start = System.nanoTime();
+
+		try {
+			renderer.render(new BufferedOutputStream(new FileOutputStream(
+					output), 1 << 16), type);
+		} catch (IOException e) {
+			System.err.println("cannot write " + output + ": " + e.getMessage());
+			return 1;
+		}
+
+		report(width, height, (System.nanoTime() - start) / 1e9);
+		return 0;
+	}
+
+	private static void report(int width, int height, double seconds) {
+		System.out.printf("rendered %dx%d in %.3fs, %.0f pixels/s%n", width,
+				height, seconds, width * (double) height / seconds);
+	}
+
+	private static int indexOf(String[] names, String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name))
+				return i;
+		}
+
+		throw new IllegalArgumentException("unknown value " + name);
+	}
+}
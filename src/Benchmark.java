@@ -0,0 +1,411 @@
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Times the iteration kernels, colouring and image writing on fixed inputs,
+ * so that changes to them can be measured from one build to the next
+ * Each case is warmed up and then timed over several rounds on one thread,
+ * the median round is reported as nanoseconds per iteration and pixels per
+ * second
+ * Point sets come from a fixed seed, so runs on the same machine and JVM
+ * can be compared directly
+ */
+public class Benchmark {
+
+	// ==== Constants ====
+
+	private static final String USAGE = "usage: java Benchmark [options] [filter]\n"
+			+ "  -w <rounds>        untimed rounds before timing (default 5)\n"
+			+ "  -r <rounds>        timed rounds, the median is reported (default 10)\n"
+			+ "  filter             only run cases whose name contains it";
+
+	private static final int[] MAX_ITERATIONS = { 100, 1000, 10000 };
+
+	// points in each set
+	private static final int POINTS = 1 << 12;
+
+	private static final long SEED = 20161017L;
+
+	private static final double MAX_RADIUS = 10;
+
+	// periodicity tolerance of a view with a thousandth between pixels
+	private static final double EPSILON = 1e-3 * Model.PERIODICITY_EPSILON;
+
+	// size of the images coloured, rendered and written
+	private static final int WIDTH = 640;
+	private static final int HEIGHT = 480;
+
+	// ==== Properties ====
+
+	private int warmupRounds = 5;
+	private int rounds = 10;
+	private String filter = "";
+
+	// results are folded into this so the kernels cannot be optimised away
+	private static volatile double sink;
+
+	// ==== Main ====
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		final Benchmark benchmark = new Benchmark();
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-w") && i + 1 < args.length) {
+					benchmark.warmupRounds = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-r") && i + 1 < args.length) {
+					benchmark.rounds = Integer.parseInt(args[++i]);
+				} else if (args[i].startsWith("-")) {
+					throw new IllegalArgumentException("unknown option " + args[i]);
+				} else {
+					benchmark.filter = args[i];
+				}
+			}
+
+			if (benchmark.warmupRounds < 0 || benchmark.rounds < 1)
+				throw new IllegalArgumentException("there must be a timed round");
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+
+		benchmark.run();
+	}
+
+	// ==== Private Helper Methods ====
+
+	private void run() {
+		System.out.printf("java %s, %s %s, %d cores, %d warmup and %d timed rounds%n",
+				System.getProperty("java.version"),
+				System.getProperty("os.name"), System.getProperty("os.arch"),
+				Runtime.getRuntime().availableProcessors(), warmupRounds,
+				rounds);
+
+		final double[][] sets = { interior(), boundary(), escaping() };
+		final String[] names = { "interior", "boundary", "escaping" };
+
+		for (int maxIteration : MAX_ITERATIONS) {
+			for (int s = 0; s < sets.length; s++) {
+				final double[] points = sets[s];
+				final int max = maxIteration;
+				final String suffix = names[s] + " " + maxIteration;
+
+				measure(new Case("escapeTime " + suffix) {
+					@Override
+					long run() {
+						long iterations = 0;
+						for (int i = 0; i < points.length; i += 2)
+							iterations += Algorithm.escapeTime(points[i],
+									points[i + 1], MAX_RADIUS, max, EPSILON);
+						return iterations;
+					}
+				}, POINTS);
+
+				measure(new Case("normalisedIterationCount " + suffix) {
+					@Override
+					long run() {
+						double iterations = 0;
+						for (int i = 0; i < points.length; i += 2)
+							iterations += Algorithm.normalisedIterationCount(
+									points[i], points[i + 1], MAX_RADIUS, max,
+									EPSILON);
+						return (long) iterations;
+					}
+				}, POINTS);
+
+				measure(new Case("burningShipFractal " + suffix) {
+					@Override
+					long run() {
+						long iterations = 0;
+						for (int i = 0; i < points.length; i += 2)
+							iterations += Algorithm.burningShipFractal(
+									points[i], -points[i + 1], MAX_RADIUS, max,
+									EPSILON);
+						return iterations;
+					}
+				}, POINTS);
+			}
+
+			// the row kernels as Model uses them, across the whole set
+			final int max = maxIteration;
+			measure(new Case("normalisedIterationCount rows " + maxIteration) {
+				final double[] row = new double[WIDTH];
+				final double[] result = new double[WIDTH];
+
+				@Override
+				long run() {
+					double iterations = 0;
+					for (int y = 0; y < HEIGHT; y += 8) {
+						for (int x = 0; x < WIDTH; x++)
+							row[x] = -2.5 + 3.5 * x / WIDTH;
+
+						Algorithm.normalisedIterationCount(row,
+								1.25 - 2.5 * y / HEIGHT, WIDTH, MAX_RADIUS,
+								max, EPSILON, result);
+						for (int x = 0; x < WIDTH; x++)
+							iterations += result[x];
+					}
+					return (long) iterations;
+				}
+			}, WIDTH * (HEIGHT / 8));
+		}
+
+		measurePalettes();
+		measureRenders();
+		measureWrites();
+		measureOpenCL();
+	}
+
+	private void measurePalettes() {
+		final int maxIteration = 1000;
+		final double[] values = new double[WIDTH * HEIGHT];
+		final Random random = new Random(SEED);
+		for (int i = 0; i < values.length; i++)
+			values[i] = random.nextDouble() * maxIteration;
+
+		final String[] names = { "hsb", "fire", "gradient", "greyscale" };
+
+		for (int p = 0; p < Palette.PALETTE_COUNT; p++) {
+			final Palette palette = new Palette(p, maxIteration);
+
+			measure(new Case("palette " + names[p], false) {
+				@Override
+				long run() {
+					long colours = 0;
+					for (double value : values)
+						colours += palette.getColour(value);
+					return colours;
+				}
+			}, values.length);
+		}
+	}
+
+	private void measureRenders() {
+		// the histogram's cumulative distribution and its second pass are
+		// what a histogram coloured render takes over a plain one
+		for (final boolean histogram : new boolean[] { false, true }) {
+			measure(new Case("Model render" + (histogram ? " histogram" : ""), false) {
+				@Override
+				long run() {
+					final Model model = new Model();
+					model.setReady(false);
+					model.setThreadCount(1);
+					model.setTileCacheSize(0);
+					model.setSize(new Dimension(WIDTH, HEIGHT));
+					model.setMaxIteration(1000);
+					model.setHistogramColouring(histogram);
+					model.show(BigDecimal.valueOf(-0.75), BigDecimal.ZERO,
+							3.5 / WIDTH);
+					model.setReady(true);
+
+					try {
+						model.waitForRender();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+
+					return model.getImage().getRGB(WIDTH / 2, HEIGHT / 2);
+				}
+			}, WIDTH * HEIGHT);
+		}
+	}
+
+	private void measureWrites() {
+		final int[] rgb = new int[WIDTH * HEIGHT];
+		final Palette palette = new Palette(Palette.PALETTE_HSB, 1000);
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++)
+				rgb[y * WIDTH + x] = palette.getColour(Algorithm
+						.normalisedIterationCount(-2.5 + 3.5 * x / WIDTH,
+								1.25 - 2.5 * y / HEIGHT, MAX_RADIUS, 1000,
+								EPSILON));
+		}
+
+		final BufferedImage image = new BufferedImage(WIDTH, HEIGHT,
+				BufferedImage.TYPE_INT_RGB);
+		image.setRGB(0, 0, WIDTH, HEIGHT, rgb, 0, WIDTH);
+
+		measure(new Case("PngWriter", false) {
+			@Override
+			long run() {
+				final CountingStream out = new CountingStream();
+				try {
+					final PngWriter png = new PngWriter(out, WIDTH, HEIGHT,
+							Deflater.BEST_SPEED);
+					png.write(rgb, HEIGHT);
+					png.close();
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+				return out.count;
+			}
+		}, WIDTH * HEIGHT);
+
+		measure(new Case("ImageIO png", false) {
+			@Override
+			long run() {
+				final ByteArrayOutputStream out = new ByteArrayOutputStream();
+				try {
+					ImageIO.write(image, "png", out);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+				return out.size();
+			}
+		}, WIDTH * HEIGHT);
+	}
+
+	private void measureOpenCL() {
+		final int total = WIDTH * HEIGHT;
+		final double[] iter = new double[total];
+		final double[] real = new double[total];
+		final double[] imag = new double[total];
+		final double scale = 3.5 / WIDTH;
+		final double[] para = { -2.5, 1.25, scale, WIDTH, total,
+				scale * Model.PERIODICITY_EPSILON };
+
+		// the kernel needs Aparapi, and falls back to a thread pool without
+		// an OpenCL device
+		try {
+			measure(new Case("OpenCLAlgorithm") {
+				@Override
+				long run() {
+					final OpenCLAlgorithm kernel = new OpenCLAlgorithm(para,
+							iter, real, imag, MAX_RADIUS, 1000);
+					kernel.execute(total);
+					kernel.dispose();
+
+					double iterations = 0;
+					for (double value : iter)
+						iterations += value;
+					return (long) iterations;
+				}
+			}, total);
+		} catch (Throwable e) {
+			System.out.printf("%-44s skipped, %s%n", "OpenCLAlgorithm", e);
+		}
+	}
+
+	private void measure(Case c, long pixels) {
+		if (!c.name.contains(filter))
+			return;
+
+		for (int i = 0; i < warmupRounds; i++)
+			sink += c.run();
+
+		final long[] times = new long[rounds];
+		long work = 0;
+
+		for (int i = 0; i < rounds; i++) {
+			final long start = System.nanoTime();
+			work = c.run();
+			times[i] = System.nanoTime() - start;
+			sink += work;
+		}
+
+		Arrays.sort(times);
+		final double median = times[rounds / 2];
+
+		if (c.counted)
+			System.out.printf("%-44s %7.3f ns/it %14.0f pixels/s%n", c.name,
+					median / Math.max(work, 1), pixels * 1e9 / median);
+		else
+			System.out.printf("%-44s %12s %14.0f pixels/s%n", c.name, "",
+					pixels * 1e9 / median);
+	}
+
+	// points well inside the main cardioid, which never escape, they count
+	// as maxIteration even where periodicity checking stops them early
+	private static double[] interior() {
+		final Random random = new Random(SEED);
+		final double[] points = new double[2 * POINTS];
+
+		for (int i = 0; i < points.length; i += 2) {
+			final double t = random.nextDouble() * 2 * Math.PI;
+			final double r = 0.3 + 0.6 * random.nextDouble();
+			points[i] = r * (Math.cos(t) / 2 - Math.cos(2 * t) / 4);
+			points[i + 1] = r * (Math.sin(t) / 2 - Math.sin(2 * t) / 4);
+		}
+
+		return points;
+	}
+
+	// points just outside the main cardioid, which escape slowly
+	private static double[] boundary() {
+		final Random random = new Random(SEED + 1);
+		final double[] points = new double[2 * POINTS];
+
+		for (int i = 0; i < points.length; i += 2) {
+			final double t = random.nextDouble() * 2 * Math.PI;
+			final double r = 1 + 1e-3 * random.nextDouble();
+			points[i] = r * (Math.cos(t) / 2 - Math.cos(2 * t) / 4);
+			points[i + 1] = r * (Math.sin(t) / 2 - Math.sin(2 * t) / 4);
+		}
+
+		return points;
+	}
+
+	// points far from the set, which escape within a few iterations
+	private static double[] escaping() {
+		final Random random = new Random(SEED + 2);
+		final double[] points = new double[2 * POINTS];
+
+		for (int i = 0; i < points.length; i += 2) {
+			final double t = random.nextDouble() * 2 * Math.PI;
+			final double r = 2.5 + 1.5 * random.nextDouble();
+			points[i] = r * Math.cos(t);
+			points[i + 1] = r * Math.sin(t);
+		}
+
+		return points;
+	}
+
+	// ==== Case ====
+
+	// a named piece of work, returning the iterations it counted or any
+	// other result when it is not counted in iterations
+	private static abstract class Case {
+		private final String name;
+		private final boolean counted;
+
+		public Case(String name) {
+			this(name, true);
+		}
+
+		public Case(String name, boolean counted) {
+			this.name = name;
+			this.counted = counted;
+		}
+
+		abstract long run();
+	}
+
+	// ==== CountingStream ====
+
+	// discards what it is given, counting the bytes
+	private static final class CountingStream extends OutputStream {
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
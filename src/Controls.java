@@ -24,6 +24,7 @@ import javax.swing.JProgressBar;
 import javax.swing.JSpinner;
 import javax.swing.JTextArea;
 import javax.swing.SpinnerNumberModel;
+import javax.swing.Timer;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.MatteBorder;
 import javax.swing.event.ChangeEvent;
@@ -40,6 +41,9 @@ public class Controls extends Box implements Observer, ActionListener,
 	private final double ZOOM_FACTOR = .6;
 	private final double MOVE_FACTOR = .4;
 
+	// fraction of the palette cycled on every refresh
+	private final double CYCLE_STEP = 1. / 256;
+
 	// ==== Properties ====
 
 	private final Model model;
@@ -54,7 +58,21 @@ public class Controls extends Box implements Observer, ActionListener,
 					Localization.get("main.algorithm.escape_time"),
 					Localization
 							.get("main.algorithm.normalized_iteration_count"),
-					Localization.get("main.algorithm.burning_ship_fractal") });
+					Localization.get("main.algorithm.burning_ship_fractal"),
+					Localization.get("main.algorithm.perturbation") });
+	private final JComboBox<String> paletteComboBox = new JComboBox<String>(
+			new String[] { Localization.get("main.palette.hsb"),
+					Localization.get("main.palette.fire"),
+					Localization.get("main.palette.gradient"),
+					Localization.get("main.palette.greyscale") });
+	private final JCheckBox cycleCheckBox = new JCheckBox(
+			Localization.get("main.cycle.checkbox"));
+	private final JComboBox<String> precisionComboBox = new JComboBox<String>(
+			new String[] { Localization.get("main.precision.auto"),
+					Localization.get("main.precision.float"),
+					Localization.get("main.precision.double"),
+					Localization.get("main.precision.double_double"),
+					Localization.get("main.precision.fixed_point") });
 	private final JSpinner maxIterSpinner = new JSpinner(
 			new SpinnerNumberModel(1000, 0, 10000000, 10));
 	private final JSpinner maxRadiusSpinner = new JSpinner(
@@ -63,6 +81,12 @@ public class Controls extends Box implements Observer, ActionListener,
 			Localization.get("main.histogram.checkbox"));
 	private final JCheckBox cardoidCheckBox = new JCheckBox(
 			Localization.get("main.cardoidbulb.checkbox"));
+	private final JCheckBox subdivisionCheckBox = new JCheckBox(
+			Localization.get("main.subdivision.checkbox"));
+	private final JCheckBox precisionCheckBox = new JCheckBox(
+			Localization.get("main.precision.checkbox"));
+	private final JCheckBox zoomCheckBox = new JCheckBox(
+			Localization.get("main.zoom.checkbox"));
 	private final JButton leftButton = createControlButton("main.left");
 	private final JButton rightButton = createControlButton("main.right");
 	private final JButton upButton = createControlButton("main.up");
@@ -73,6 +97,9 @@ public class Controls extends Box implements Observer, ActionListener,
 	private final JLabel renderingLabel = new JLabel();
 	private final JProgressBar progressBar = new JProgressBar();
 
+	// steps the palette of a finished image at the refresh rate
+	private final Timer cycleTimer = new Timer(40, this);
+
 	// ==== Constructor ====
 
 	public Controls(Model model) {
@@ -89,10 +116,16 @@ public class Controls extends Box implements Observer, ActionListener,
 		threadsSpinner.addChangeListener(this);
 		fpsSpinner.addChangeListener(this);
 		algorithmComboBox.addActionListener(this);
+		paletteComboBox.addActionListener(this);
+		cycleCheckBox.addItemListener(this);
+		precisionComboBox.addActionListener(this);
 		maxIterSpinner.addChangeListener(this);
 		maxRadiusSpinner.addChangeListener(this);
 		histogramCheckBox.addItemListener(this);
 		cardoidCheckBox.addItemListener(this);
+		subdivisionCheckBox.addItemListener(this);
+		precisionCheckBox.addItemListener(this);
+		zoomCheckBox.addItemListener(this);
 		leftButton.addActionListener(this);
 		rightButton.addActionListener(this);
 		upButton.addActionListener(this);
@@ -108,6 +141,12 @@ public class Controls extends Box implements Observer, ActionListener,
 		add(Box.createRigidArea(new Dimension(0, 15)));
 		addSetting("main.algorithm", algorithmComboBox);
 		add(Box.createRigidArea(new Dimension(0, 15)));
+		addSetting("main.palette", paletteComboBox);
+		add(Box.createRigidArea(new Dimension(0, 3)));
+		cycleCheckBox.setAlignmentX(JComponent.LEFT_ALIGNMENT);
+		cycleCheckBox.setToolTipText(Localization.get("main.cycle.help"));
+		add(cycleCheckBox);
+		add(Box.createRigidArea(new Dimension(0, 15)));
 		addSetting("main.iter", maxIterSpinner);
 		add(Box.createRigidArea(new Dimension(0, 15)));
 		addSetting("main.radius", maxRadiusSpinner);
@@ -116,6 +155,13 @@ public class Controls extends Box implements Observer, ActionListener,
 		add(Box.createRigidArea(new Dimension(0, 15)));
 		addSetting("main.cardoidbulb", cardoidCheckBox);
 		add(Box.createRigidArea(new Dimension(0, 15)));
+		addSetting("main.subdivision", subdivisionCheckBox);
+		add(Box.createRigidArea(new Dimension(0, 15)));
+		addSetting("main.precision", precisionComboBox);
+		add(Box.createRigidArea(new Dimension(0, 3)));
+		precisionCheckBox.setAlignmentX(JComponent.LEFT_ALIGNMENT);
+		add(precisionCheckBox);
+		add(Box.createRigidArea(new Dimension(0, 15)));
 
 		// controls
 		JPanel moving = new JPanel(new GridLayout(3, 3, 2, 2));
@@ -130,6 +176,10 @@ public class Controls extends Box implements Observer, ActionListener,
 		moving.add(downButton);
 		moving.add(createGlue());
 		addSetting("main.viewport", moving);
+		add(Box.createRigidArea(new Dimension(0, 3)));
+		zoomCheckBox.setAlignmentX(JComponent.LEFT_ALIGNMENT);
+		zoomCheckBox.setToolTipText(Localization.get("main.zoom.help"));
+		add(zoomCheckBox);
 
 		// vertical spacing in a really weird way ..
 		add(new JPanel(new GridBagLayout()));
@@ -178,9 +228,24 @@ public class Controls extends Box implements Observer, ActionListener,
 				model.setAlgorithm(Model.ALGORITHM_ESCAPE_TIME);
 			} else if (algorithmComboBox.getSelectedIndex() == 1) {
 				model.setAlgorithm(Model.ALGORITHM_NORMALISED_ITERATION_COUNT);
-			} else {
+			} else if (algorithmComboBox.getSelectedIndex() == 2) {
 				model.setAlgorithm(Model.ALGORITHM_BURNING_SHIP_FRACTAL);
+			} else {
+				model.setAlgorithm(Model.ALGORITHM_PERTURBATION);
 			}
+
+			// palette
+		} else if (source == paletteComboBox) {
+			model.setPalette(paletteComboBox.getSelectedIndex());
+
+			// precision
+		} else if (source == precisionComboBox) {
+			model.setPrecision(precisionComboBox.getSelectedIndex());
+
+			// palette cycling, which would restart a render still running
+		} else if (source == cycleTimer) {
+			if (model.getProgress() >= 1.f)
+				model.setPaletteOffset(model.getPaletteOffset() + CYCLE_STEP);
 		}
 	}
 
@@ -192,6 +257,7 @@ public class Controls extends Box implements Observer, ActionListener,
 			model.setThreadCount((int) threadsSpinner.getModel().getValue());
 		} else if (e.getSource() == fpsSpinner) {
 			model.setRefreshRate((int) fpsSpinner.getModel().getValue());
+			cycleTimer.setDelay(1000 / model.getRefreshRate());
 		} else if (e.getSource() == maxIterSpinner) {
 			model.setMaxIteration((int) maxIterSpinner.getModel().getValue());
 		} else if (e.getSource() == maxRadiusSpinner) {
@@ -207,6 +273,19 @@ public class Controls extends Box implements Observer, ActionListener,
             model.setHistogramColouring(histogramCheckBox.isSelected());
         } else if (e.getItemSelectable() == cardoidCheckBox) {
         	model.setCardoibBulbCheck(cardoidCheckBox.isSelected());
+        } else if (e.getItemSelectable() == subdivisionCheckBox) {
+        	model.setSubdivision(subdivisionCheckBox.isSelected());
+        } else if (e.getItemSelectable() == precisionCheckBox) {
+        	model.setArbitraryPrecision(precisionCheckBox.isSelected());
+        } else if (e.getItemSelectable() == zoomCheckBox) {
+        	model.setPowerOfTwoZoom(zoomCheckBox.isSelected());
+        } else if (e.getItemSelectable() == cycleCheckBox) {
+        	if (cycleCheckBox.isSelected()) {
+        		cycleTimer.setDelay(1000 / model.getRefreshRate());
+        		cycleTimer.start();
+        	} else {
+        		cycleTimer.stop();
+        	}
         }
     }
 
@@ -218,10 +297,15 @@ public class Controls extends Box implements Observer, ActionListener,
 			threadsSpinner.getModel().setValue(model.getThreadCount());
 			fpsSpinner.getModel().setValue(model.getRefreshRate());
 			algorithmComboBox.setSelectedIndex(model.getAlgorithm());
+			paletteComboBox.setSelectedIndex(model.getPalette());
 			maxIterSpinner.getModel().setValue(model.getMaxIteration());
 			maxRadiusSpinner.getModel().setValue(model.getMaxRadius());
 			histogramCheckBox.setSelected(model.getHistogramColouring());
 			cardoidCheckBox.setSelected(model.getCardoidBulbCheck());
+			subdivisionCheckBox.setSelected(model.getSubdivision());
+			precisionComboBox.setSelectedIndex(model.getPrecision());
+			precisionCheckBox.setSelected(model.getArbitraryPrecision());
+			zoomCheckBox.setSelected(model.getPowerOfTwoZoom());
 			renderingLabel.setText(model.getProgress() < 1.f ? Localization
 					.get("main.rendering.title") : String.format(
 					Localization.get("main.rendered.title"),
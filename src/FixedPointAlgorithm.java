@@ -0,0 +1,288 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Mandelbrot iteration in 128 bit fixed point for zooms between 1e-15 and
+ * 1e-35, where it is cheaper than floating formats of similar precision
+ * Numbers are two's complement Q4.124 held in a high and a low long, with
+ * products formed from 64 x 64 -> 128 bit limb multiplications
+ */
+public class FixedPointAlgorithm {
+
+	// ==== Constants ====
+
+	// bits after the binary point
+	private static final int FRACTION_BITS = 124;
+
+	// value of the lowest bit of the high limb
+	private static final double HIGH_UNIT = 0x1p-60;
+
+	// the largest radius that keeps every intermediate within range
+	private static final double FIXED_RADIUS = 2;
+
+	// products are written here, hi then lo, one array a thread so that
+	// neither a pixel nor an iteration allocates
+	private static final ThreadLocal<long[]> PRODUCTS = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[6];
+		}
+	};
+
+	// ==== Properties ====
+
+	// top left corner and pixel spacing
+	private final long cornerXHi, cornerXLo;
+	private final long cornerYHi, cornerYLo;
+	private final long stepHi, stepLo;
+
+	private final double maxRadiusSquared;
+	private final int maxIteration;
+	private final double epsilon;
+
+	// ==== Constructor ====
+
+	/**
+	 * Prepares the fixed point coordinates of a view
+	 *
+	 * @param x is the real part of the top left corner
+	 * @param y is the imaginary part of the top left corner
+	 * @param scale is the distance between pixels
+	 * @param maxRadius is the escape radius
+	 * @param maxIteration is the maximum number of iterations
+	 * @param epsilon is the periodicity tolerance, zero only accepts exact
+	 * repeats
+	 */
+	public FixedPointAlgorithm(BigDecimal x, BigDecimal y, double scale,
+			double maxRadius, int maxIteration, double epsilon) {
+		final BigInteger fx = toFixed(x);
+		final BigInteger fy = toFixed(y);
+		final BigInteger fs = toFixed(new BigDecimal(scale));
+
+		cornerXHi = fx.shiftRight(64).longValue();
+		cornerXLo = fx.longValue();
+		cornerYHi = fy.shiftRight(64).longValue();
+		cornerYLo = fy.longValue();
+		stepHi = fs.shiftRight(64).longValue();
+		stepLo = fs.longValue();
+
+		this.maxRadiusSquared = maxRadius * maxRadius;
+		this.maxIteration = maxIteration;
+		this.epsilon = epsilon;
+	}
+
+	// ==== Public Methods ====
+
+	/**
+	 * Escape time of a pixel, matching Algorithm.escapeTime
+	 *
+	 * @param x is the column of the pixel
+	 * @param y is the row of the pixel
+	 * @return the iteration count
+	 */
+	public int escapeTime(int x, int y) {
+		return (int) iterate(x, y, false);
+	}
+
+	/**
+	 * Normalised iteration count of a pixel, matching
+	 * Algorithm.normalisedIterationCount
+	 *
+	 * @param x is the column of the pixel
+	 * @param y is the row of the pixel
+	 * @return the smoothed iteration count
+	 */
+	public double normalisedIterationCount(int x, int y) {
+		return iterate(x, y, true);
+	}
+
+	/**
+	 * High 64 bits of the unsigned 128 bit product of two longs, the
+	 * unsigned counterpart of Math.multiplyHigh which is not available on
+	 * this platform
+	 */
+	public static long multiplyHigh(long a, long b) {
+		final long a0 = a & 0xFFFFFFFFL, a1 = a >>> 32;
+		final long b0 = b & 0xFFFFFFFFL, b1 = b >>> 32;
+
+		final long t = a1 * b0 + ((a0 * b0) >>> 32);
+		final long u = a0 * b1 + (t & 0xFFFFFFFFL);
+
+		return a1 * b1 + (t >>> 32) + (u >>> 32);
+	}
+
+	// ==== Private Helper Methods ====
+
+	private static BigInteger toFixed(BigDecimal value) {
+		return value.multiply(new BigDecimal(BigInteger.ONE.shiftLeft(FRACTION_BITS)))
+				.toBigInteger();
+	}
+
+	private double iterate(int px, int py, boolean normalised) {
+		// x0 = corner + px * step
+		long lo = stepLo * px;
+		long hi = stepHi * px + multiplyHigh(stepLo, px);
+		final long x0Lo = cornerXLo + lo;
+		final long x0Hi = cornerXHi + hi + (below(x0Lo, lo) ? 1 : 0);
+
+		// y0 = corner - py * step
+		lo = stepLo * py;
+		hi = stepHi * py + multiplyHigh(stepLo, py);
+		final long y0Lo = cornerYLo - lo;
+		final long y0Hi = cornerYHi - hi - (below(cornerYLo, lo) ? 1 : 0);
+
+		long xHi = x0Hi, xLo = x0Lo;
+		long yHi = y0Hi, yLo = y0Lo;
+		int iteration = 0;
+
+		// earlier point of the orbit that periodicity is checked against
+		long xsHi = xHi, xsLo = xLo;
+		long ysHi = yHi, ysLo = yLo;
+
+		// fixed point keeps going while every intermediate stays in range
+		final double fixedRadiusSquared = Math.min(maxRadiusSquared,
+				FIXED_RADIUS * FIXED_RADIUS);
+
+		final long[] p = PRODUCTS.get();
+
+		while (iteration < maxIteration) {
+			final double xd = xHi * HIGH_UNIT, yd = yHi * HIGH_UNIT;
+			if (xd * xd + yd * yd >= fixedRadiusSquared)
+				break;
+
+			multiply(xHi, xLo, xHi, xLo, p, 0);
+			multiply(yHi, yLo, yHi, yLo, p, 2);
+			multiply(xHi, xLo, yHi, yLo, p, 4);
+
+			// xt = x^2 - y^2 + x0
+			lo = p[1] - p[3];
+			hi = p[0] - p[2] - (below(p[1], p[3]) ? 1 : 0);
+			final long xtLo = lo + x0Lo;
+			final long xtHi = hi + x0Hi + (below(xtLo, lo) ? 1 : 0);
+
+			// yt = 2 x y + y0
+			lo = p[5] << 1;
+			hi = (p[4] << 1) | (p[5] >>> 63);
+			final long ytLo = lo + y0Lo;
+			final long ytHi = hi + y0Hi + (below(ytLo, lo) ? 1 : 0);
+
+			xHi = xtHi;
+			xLo = xtLo;
+			yHi = ytHi;
+			yLo = ytLo;
+
+			iteration += 1;
+
+			// Brent's periodicity checking as in Algorithm.escapeTime, on the
+			// exact difference from the earlier point
+			final double dx = distance(xHi, xLo, xsHi, xsLo);
+			final double dy = distance(yHi, yLo, ysHi, ysLo);
+
+			if (dx + dy <= epsilon) {
+				iteration = maxIteration;
+				break;
+			}
+			if ((iteration & (iteration - 1)) == 0) {
+				xsHi = xHi;
+				xsLo = xLo;
+				ysHi = yHi;
+				ysLo = yLo;
+			}
+		}
+
+		// an escaping point no longer needs the precision, so any escape
+		// radius beyond the fixed point range is reached in doubles
+		double x = toDouble(xHi, xLo), y = toDouble(yHi, yLo);
+		final double x0 = toDouble(x0Hi, x0Lo), y0 = toDouble(y0Hi, y0Lo);
+
+		while (x * x + y * y < maxRadiusSquared && iteration < maxIteration) {
+			final double xt = x * x - y * y + x0;
+			y = 2 * x * y + y0;
+			x = xt;
+
+			iteration += 1;
+		}
+
+		if (!normalised || iteration >= maxIteration)
+			return iteration;
+
+		double zn_abs = Math.sqrt(x * x + y * y);
+		double u = Math.log(Math.log(zn_abs) / Math.log(maxRadiusSquared))
+				/ Math.log(2);
+
+		return Math.min(iteration + 1 - Math.min(u, 1), maxIteration);
+	}
+
+	private static void multiply(long ah, long al, long bh, long bl,
+			long[] result, int index) {
+		// multiply magnitudes and restore the sign afterwards
+		final boolean negative = (ah ^ bh) < 0;
+
+		if (ah < 0) {
+			al = -al;
+			ah = ~ah + (al == 0 ? 1 : 0);
+		}
+
+		if (bh < 0) {
+			bl = -bl;
+			bh = ~bh + (bl == 0 ? 1 : 0);
+		}
+
+		// the 256 bit product as words w3 w2 w1 (w0 only carries into w1)
+		final long p0 = multiplyHigh(al, bl);
+		final long p1Lo = ah * bl, p1Hi = multiplyHigh(ah, bl);
+		final long p2Lo = al * bh, p2Hi = multiplyHigh(al, bh);
+		final long p3Lo = ah * bh, p3Hi = multiplyHigh(ah, bh);
+
+		long w1 = p0 + p1Lo;
+		long carry = below(w1, p0) ? 1 : 0;
+		final long t = w1 + p2Lo;
+		carry += below(t, w1) ? 1 : 0;
+		w1 = t;
+
+		long w2 = p1Hi + p2Hi;
+		long carry2 = below(w2, p1Hi) ? 1 : 0;
+		long s = w2 + p3Lo;
+		carry2 += below(s, w2) ? 1 : 0;
+		w2 = s + carry;
+		carry2 += below(w2, s) ? 1 : 0;
+
+		final long w3 = p3Hi + carry2;
+
+		// shift right by the fraction bits to get back to Q4.124
+		long lo = (w2 << 4) | (w1 >>> 60);
+		long hi = (w3 << 4) | (w2 >>> 60);
+
+		if (negative) {
+			lo = -lo;
+			hi = ~hi + (lo == 0 ? 1 : 0);
+		}
+
+		result[index] = hi;
+		result[index + 1] = lo;
+	}
+
+	private static double distance(long ah, long al, long bh, long bl) {
+		// |a - b| is negated before conversion so small differences keep
+		// their precision
+		long lo = al - bl;
+		long hi = ah - bh - (below(al, bl) ? 1 : 0);
+
+		if (hi < 0) {
+			lo = -lo;
+			hi = ~hi + (lo == 0 ? 1 : 0);
+		}
+
+		return toDouble(hi, lo);
+	}
+
+	private static boolean below(long a, long b) {
+		// unsigned comparison
+		return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+	}
+
+	private static double toDouble(long hi, long lo) {
+		// the low limb is unsigned
+		return hi * HIGH_UNIT + ((lo >>> 1) * 0x1p-123);
+	}
+}
@@ -33,21 +33,29 @@ public class FloatAlgorithm extends Kernel {
 		float x0 = x;
 		float y0 = y;
 		int iteration = 0;
+		
+		// earlier point of the orbit that periodicity is checked against
+		float xs = x;
+		float ys = y;
 
 		while (x * x + y * y < maxRadiusSquared && iteration < maxIteration) {
 			float xt = x * x - y * y + x0;
 			float yt = 2 * x * y + y0;
 			
-//			// implement wikipedia's periodic checking
-//			if (x == xt && y == yt) {
-//				iteration = maxIteration;
-//				break;
-//			}
-			
 			x = xt;
 			y = yt;
 			
 			iteration ++;
+			
+			// Brent's periodicity checking as in Algorithm.escapeTime
+			if (abs(x - xs) + abs(y - ys) <= para[5]) {
+				iteration = maxIteration;
+				break;
+			}
+			if ((iteration & (iteration - 1)) == 0) {
+				xs = x;
+				ys = y;
+			}
 		}
 		
 		//System.out.println(iteration);
@@ -0,0 +1,368 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The number of pixels at each whole iteration count, for histogram
+ * colouring
+ * Every thread counts into its own shard of plain ints, so the first pass
+ * shares nothing, and the shards are only merged once it is over
+ * Shards are arrays of every bin while the range is small and maps of the
+ * bins in use beyond, since a render only meets as many distinct counts as
+ * it has pixels however large the maximum iteration is
+ * A shard is allocated when its thread first counts, so a Model that never
+ * colours by histogram pays nothing for it
+ */
+final class Histogram {
+
+	// ==== Constants ====
+
+	// the largest range counted in arrays, 512 KB a shard
+	private static final int DENSE_BINS = 1 << 17;
+
+	// ==== Properties ====
+
+	private final int bins;
+
+	// the shards of every thread that has counted
+	private final List<Shard> all = new CopyOnWriteArrayList<Shard>();
+
+	private final ThreadLocal<Shard> local = new ThreadLocal<Shard>() {
+		@Override
+		protected Shard initialValue() {
+			final Shard shard = new Shard(Thread.currentThread(), bins);
+			all.add(shard);
+			return shard;
+		}
+	};
+
+	// ==== Constructor ====
+
+	/**
+	 * @param maxIteration is the largest bin
+	 */
+	Histogram(int maxIteration) {
+		bins = maxIteration + 1;
+	}
+
+	// ==== Package Methods ====
+
+	/**
+	 * The shard of the calling thread, to be fetched once for a tile or row
+	 * rather than for every pixel
+	 */
+	Shard shard() {
+		return local.get();
+	}
+
+	/**
+	 * Empties every shard, only while no thread is counting
+	 */
+	void clear() {
+		for (Shard shard : all) {
+			// the threads of a replaced pool will not count again
+			if (shard.thread.isAlive())
+				shard.clear();
+			else
+				all.remove(shard);
+		}
+	}
+
+	/**
+	 * Merges the shards into the cumulative distribution of the counts,
+	 * only once every thread is done counting
+	 *
+	 * @param pixels is the number of pixels counted
+	 */
+	Distribution distribution(int pixels) {
+		if (bins <= DENSE_BINS) {
+			final int[] counts = new int[bins];
+			for (Shard shard : all) {
+				if (shard.counts == null)
+					continue;
+
+				for (int j = 0; j < bins; j++)
+					counts[j] += shard.counts[j];
+			}
+
+			final double[] sums = new double[bins];
+			double t = 0;
+			int min = -1, max = -1;
+			for (int j = 0; j < bins; j++) {
+				if (counts[j] != 0) {
+					t += Math.pow((double) counts[j] / pixels, 1d / 4d);
+					if (min < 0)
+						min = j;
+					max = j;
+				}
+				sums[j] = t;
+			}
+
+			return new Distribution(null, sums, min, max, false);
+		}
+
+		final int[][] merged = merge();
+		final int[] used = merged[0], counts = merged[1];
+		final int n = used.length;
+
+		final double[] sums = new double[n];
+		double t = 0;
+		for (int i = 0; i < n; i++) {
+			t += Math.pow((double) counts[i] / pixels, 1d / 4d);
+			sums[i] = t;
+		}
+
+		return new Distribution(used, sums, n > 0 ? used[0] : -1,
+				n > 0 ? used[n - 1] : -1, false);
+	}
+
+	/**
+	 * Estimates the cumulative distribution of the whole image from the
+	 * counts of an even sample of it, only once every thread is done
+	 * counting
+	 * A sample misses most of the sparsely populated bins the image has,
+	 * and with every bin adding the fourth root of its share that would
+	 * leave the long tail of high counts short, so each count is spread
+	 * over the gap down to the bin below it and the distribution is
+	 * interpolated between the bins met
+	 *
+	 * @param pixels is the number of pixels sampled
+	 */
+	Distribution estimate(int pixels) {
+		final int[][] merged = merge();
+		final int[] used = merged[0], counts = merged[1];
+		final int n = used.length;
+
+		final double[] sums = new double[n];
+		double t = 0;
+		for (int i = 0; i < n; i++) {
+			final int gap = i == 0 ? 1 : used[i] - used[i - 1];
+			t += gap * Math.pow((double) counts[i] / gap / pixels, 1d / 4d);
+			sums[i] = t;
+		}
+
+		final Distribution estimate = new Distribution(used, sums,
+				n > 0 ? used[0] : -1, n > 0 ? used[n - 1] : -1, true);
+		if (bins > DENSE_BINS)
+			return estimate;
+
+		// looked up for every sample of the passes, so a small range is
+		// interpolated into every bin once
+		final double[] dense = new double[bins];
+		for (int j = 0; j < bins; j++)
+			dense[j] = estimate.at(j);
+
+		return new Distribution(null, dense, estimate.min, estimate.max, false);
+	}
+
+	// ==== Private Helper Methods ====
+
+	// the bins in use, in order, and their counts summed over the shards
+	private int[][] merge() {
+		if (bins <= DENSE_BINS) {
+			final int[] counts = new int[bins];
+			int n = 0;
+			for (Shard shard : all) {
+				if (shard.counts == null)
+					continue;
+
+				for (int j = 0; j < bins; j++)
+					counts[j] += shard.counts[j];
+			}
+
+			for (int j = 0; j < bins; j++) {
+				if (counts[j] != 0)
+					n++;
+			}
+
+			final int[] used = new int[n], values = new int[n];
+			n = 0;
+			for (int j = 0; j < bins; j++) {
+				if (counts[j] != 0) {
+					used[n] = j;
+					values[n++] = counts[j];
+				}
+			}
+
+			return new int[][] { used, values };
+		}
+
+		final Shard merged = new Shard(null, 0);
+		for (Shard shard : all) {
+			for (int i = 0; i < shard.keys.length; i++) {
+				if (shard.keys[i] != 0)
+					merged.add(shard.keys[i] - 1, shard.values[i]);
+			}
+		}
+
+		final int[] used = new int[merged.size];
+		int n = 0;
+		for (int i = 0; i < merged.keys.length; i++) {
+			if (merged.keys[i] != 0)
+				used[n++] = merged.keys[i] - 1;
+		}
+		Arrays.sort(used);
+
+		final int[] values = new int[n];
+		for (int i = 0; i < n; i++)
+			values[i] = merged.get(used[i]);
+
+		return new int[][] { used, values };
+	}
+
+	// ==== Shard ====
+
+	/**
+	 * The counts of a single thread, only ever written by that thread
+	 */
+	static final class Shard {
+		private final Thread thread;
+
+		// every bin, or null when the bins in use are hashed
+		private final int[] counts;
+
+		// open addressing of bins plus one, zero marking a free slot
+		private int[] keys = new int[0];
+		private int[] values;
+		private int size;
+
+		private Shard(Thread thread, int bins) {
+			this.thread = thread;
+			counts = bins > 0 && bins <= DENSE_BINS ? new int[bins] : null;
+
+			if (counts == null) {
+				keys = new int[64];
+				values = new int[64];
+			}
+		}
+
+		/**
+		 * Counts a pixel of a whole iteration count
+		 */
+		void add(int bin) {
+			if (counts != null)
+				counts[bin]++;
+			else
+				add(bin, 1);
+		}
+
+		private void add(int bin, int count) {
+			// kept at most half full
+			if (2 * (size + 1) > keys.length)
+				grow();
+
+			final int mask = keys.length - 1;
+			int i = mix(bin) & mask;
+
+			while (keys[i] != 0 && keys[i] != bin + 1)
+				i = (i + 1) & mask;
+
+			if (keys[i] == 0) {
+				keys[i] = bin + 1;
+				size++;
+			}
+			values[i] += count;
+		}
+
+		private int get(int bin) {
+			final int mask = keys.length - 1;
+			int i = mix(bin) & mask;
+
+			while (keys[i] != 0) {
+				if (keys[i] == bin + 1)
+					return values[i];
+				i = (i + 1) & mask;
+			}
+
+			return 0;
+		}
+
+		private void grow() {
+			final int[] oldKeys = keys, oldValues = values;
+			keys = new int[oldKeys.length * 2];
+			values = new int[oldKeys.length * 2];
+			size = 0;
+
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0)
+					add(oldKeys[i] - 1, oldValues[i]);
+			}
+		}
+
+		private void clear() {
+			if (counts != null) {
+				Arrays.fill(counts, 0);
+			} else {
+				Arrays.fill(keys, 0);
+				Arrays.fill(values, 0);
+				size = 0;
+			}
+		}
+
+		private static int mix(int bin) {
+			// neighbouring bins are spread over the table
+			final int h = bin * 0x9E3779B9;
+			return h ^ h >>> 16;
+		}
+	}
+
+	// ==== Distribution ====
+
+	/**
+	 * The cumulative distribution of the counts, each bin adding the fourth
+	 * root of its share of the pixels, shared by every tile of the second
+	 * pass
+	 */
+	static final class Distribution {
+		// the bins in use, or null when every bin has a sum
+		private final int[] used;
+		private final double[] sums;
+
+		// the first and last bins counted, -1 when nothing was
+		private final int min, max;
+
+		// whether bins between those in use are interpolated
+		private final boolean interpolated;
+
+		private Distribution(int[] used, double[] sums, int min, int max,
+				boolean interpolated) {
+			this.used = used;
+			this.sums = sums;
+			this.min = min;
+			this.max = max;
+			this.interpolated = interpolated;
+		}
+
+		int getMin() {
+			return min;
+		}
+
+		int getMax() {
+			return max;
+		}
+
+		/**
+		 * The distribution up to and including a bin, zero below the first
+		 */
+		double at(int bin) {
+			if (bin < 0)
+				return 0;
+			if (used == null)
+				return sums[Math.min(bin, sums.length - 1)];
+
+			// the last bin in use at or below it
+			final int i = Arrays.binarySearch(used, bin);
+			if (i >= 0)
+				return sums[i];
+			if (i == -1)
+				return 0;
+
+			final int below = -i - 2;
+			if (!interpolated || below == used.length - 1)
+				return sums[below];
+
+			return sums[below] + (sums[below + 1] - sums[below])
+					* (bin - used[below]) / (used[below + 1] - used[below]);
+		}
+	}
+}
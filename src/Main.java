@@ -1,13 +1,20 @@
+import java.io.File;
+
 import javax.swing.JFrame;
 import javax.swing.SwingUtilities;
 
 public class Main {
-	public static void main(String[] args) {
+	/**
+	 * @param args optionally holds a directory to keep computed tiles in
+	 * between runs
+	 */
+	public static void main(final String[] args) {
 		// run the program within the UI thread
 		SwingUtilities.invokeLater(new Runnable() {
 			@Override
 			public void run() {
-				final Window window = new Window();
+				final Window window = new Window(args.length > 0 ? new File(
+						args[0]) : null);
 				window.setVisible(true);
 				window.setExtendedState(window.getExtendedState() | JFrame.MAXIMIZED_BOTH);				
 			}			
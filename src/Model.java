@@ -1,5 +1,6 @@
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Graphics;
 import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -9,19 +10,22 @@ import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.DoubleBuffer;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Observable;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
+import java.util.Observer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.Timer;
 /**
- * TODO: Implement Colour Palette TODO: Implement Dynamic Precision (float ->
- * double -> BigDecimal(?)) TODO: Implement Historgram Use TODO: Refresh only
- * when necessary
+ * TODO: Implement Historgram Use TODO: Refresh only when necessary
  * TODO: SuperFractalThing (understand code)
  * 
  * @author khengboonpek
@@ -46,50 +50,154 @@ public class Model extends Observable implements ActionListener {
 	 */
 	public static final int ALGORITHM_BURNING_SHIP_FRACTAL = 2;
 
+	/**
+	 * Normalized Iteration Count using Perturbation for deep zooms
+	 */
+	public static final int ALGORITHM_PERTURBATION = 3;
+
+	/**
+	 * Pick the cheapest precision that resolves the pixels
+	 */
+	public static final int PRECISION_AUTO = 0;
+
+	/**
+	 * Iterate with floats
+	 */
+	public static final int PRECISION_FLOAT = 1;
+
+	/**
+	 * Iterate with doubles
+	 */
+	public static final int PRECISION_DOUBLE = 2;
+
+	/**
+	 * Iterate with double-doubles, about 106 bits of mantissa
+	 */
+	public static final int PRECISION_DOUBLE_DOUBLE = 3;
+
+	/**
+	 * Iterate with 128 bit fixed point, about 124 bits after the point
+	 */
+	public static final int PRECISION_FIXED_POINT = 4;
+
+	/**
+	 * Width and height of the square tiles handed out to the render pool
+	 */
+	private static final int TILE_SIZE = 64;
+
+	/**
+	 * Block size of the coarsest progressive pass, must divide TILE_SIZE
+	 */
+	private static final int PREVIEW_STEP = 16;
+
+	/**
+	 * Largest area that is iterated rather than subdivided any further
+	 */
+	private static final int MIN_SUBDIVISION = 64;
+
+	/**
+	 * Pixel spacing, in units in the last place of the coordinates, below
+	 * which a precision no longer resolves the pixels
+	 */
+	static final double PRECISION_ULPS = 1024;
+
+	/**
+	 * Distance, as a fraction of the pixel spacing, within which an orbit
+	 * that returns to an earlier point of itself is taken to be periodic
+	 */
+	static final double PERIODICITY_EPSILON = 1d / 1024d;
+
+	/**
+	 * Default memory budget of the tile cache, in bytes
+	 */
+	private static final long TILE_CACHE_SIZE = 64L << 20;
+
+	/**
+	 * Largest exponent of a single power of two zoom
+	 */
+	private static final int MAX_ZOOM_SHIFT = 12;
+
 	// ==== Properties ====
 
 	// create a timer that calls its own ActionListener every 1000ms
 	// set the threadCount to a non-final variable defaulting to the number of
 	// processors
-	// store the array of threads in an ArrayList size threadCount
-	// use a CountDownLatch to ensure synchrony between threads
+	// tiles are rendered by a work-stealing ForkJoinPool of threadCount
+	// workers, driven by a single RenderThread that runs the passes in turn
 	private final Timer timer = new Timer(1000, this);
 	private int threadCount = Runtime.getRuntime().availableProcessors();
-	private final ArrayList<Thread> threads = new ArrayList<Thread>(threadCount);
-	private CountDownLatch runLatch;
+	private ForkJoinPool pool = new ForkJoinPool(threadCount);
+	private RenderThread renderThread;
+
+	// counters of the work done, watched through JMX
+	private final RenderMetrics metrics = new RenderMetrics();
 
-	// indexes used for colouring
-	private int[] indexes;
+	// per-pixel values used for colouring
 	private double[] iterations;
-	private AtomicInteger[] histogram;
+	private Histogram histogram;
 	private final AtomicInteger processed = new AtomicInteger();
-	private final AtomicInteger firstIndex = new AtomicInteger();
-	private final AtomicInteger secondIndex = new AtomicInteger();
+
+	// the histogram of a finished image, kept while only its colours change
+	private Histogram.Distribution distribution;
 
 	// view-related modelling
 	private boolean isReady = true;
 	private int refreshRate;
 	private int algorithm = 1;
+	private int palette = Palette.PALETTE_HSB;
+	private double paletteOffset = 0;
+	private int precision = PRECISION_AUTO;
 	private int maxIteration = 100;
 	private double maxRadius = 2;
 	private boolean dragToZoom = true;
 	private boolean histogramColouring = false;
 	private boolean cardoidBulbCheck = true;
-	private boolean shuffleIndexes = true;
+	private boolean progressive = true;
+	private boolean subdivision = false;
 	private boolean openCLRendering = false;
 	private boolean arbitraryPrecision = false;
+	private boolean powerOfTwoZoom = false;
 	private long renderStart = 0;
 	private volatile long renderTime = 0;
 
-	// image and coordinates
+	// region of the image written since observers were last notified
+	private final Object dirtyLock = new Object();
+	private Rectangle dirty;
+
+	// image and coordinates, point is kept exactly in preciseX and preciseY
+	// for zooms beyond the precision of a double
 	private Point2D point = new Point2D.Double(-2.0, 1.6);
+	private BigDecimal preciseX = BigDecimal.valueOf(-2.0);
+	private BigDecimal preciseY = BigDecimal.valueOf(1.6);
 	private double scale = 1 / 200;
 	private BufferedImage image;
 
+	// the corner as a column and a row of the pixel grid of the plane,
+	// rows counting downwards
+	private BigInteger column = BigInteger.ZERO;
+	private BigInteger row = BigInteger.ZERO;
+
+	// tiles already computed, shared by every render, and optionally kept
+	// on disk between runs
+	private final TileCache tileCache = new TileCache(TILE_CACHE_SIZE);
+	private TileStore tileStore;
+
+	// part of the iteration buffer holding final values for the view, and
+	// the part a pan, a resize or a zoom hands over to the next render
+	// both are lattices of every step-th pixel from their top left corner
+	private Rectangle valid = new Rectangle();
+	private int validStep = 1;
+	private Rectangle kept;
+	private int keptStep = 1;
+
+	// lookup table for the current palette and maxIteration
+	private Palette colours = new Palette(palette, maxIteration);
+
 	// ==== Constructor ====
 
 	public Model() {
 		super();
+		metrics.setPool(pool);
 		setReady(false);
 		setSize(new Dimension(1, 1));
 		setRefreshRate(25);
@@ -127,17 +235,27 @@ public class Model extends Observable implements ActionListener {
 			// create new BufferedImage with new Dimensions
 			BufferedImage newImage = new BufferedImage(size.width, size.height,
 					BufferedImage.TYPE_INT_RGB);
+			double[] newIterations = new double[size.width * size.height];
+
+			// the corner stays put, so the overlap with the old image (if
+			// existing) is kept as it is and only the rest is rendered
+			if (image != null) {
+				final int w = Math.min(image.getWidth(), size.width);
+				final int h = Math.min(image.getHeight(), size.height);
+
+				newImage.createGraphics().drawImage(image, 0, 0, null);
+				for (int y = 0; y < h; y++) {
+					System.arraycopy(iterations, y * image.getWidth(),
+							newIterations, y * size.width, w);
+				}
 
-			// map old image (if existing) onto the new image
-			if (image != null)
-				newImage.createGraphics().drawImage(image, 0, 0, size.width,
-						size.height, null);
+				kept = clip(valid, validStep, new Rectangle(0, 0, w, h));
+				keptStep = validStep;
+			}
 
-			// update the image reference
+			// update the image and the per-pixel buffers
 			image = newImage;
-
-			// refresh the indexes
-			refreshIndexes();
+			iterations = newIterations;
 
 			// start drawing
 			startDrawing();
@@ -157,6 +275,12 @@ public class Model extends Observable implements ActionListener {
 		if (this.threadCount != threadCount) {
 			stopDrawing();
 			this.threadCount = threadCount;
+
+			// replace the pool with one of the new parallelism
+			pool.shutdown();
+			pool = new ForkJoinPool(threadCount);
+			metrics.setPool(pool);
+
 			startDrawing();
 		}
 	}
@@ -187,6 +311,89 @@ public class Model extends Observable implements ActionListener {
 		}
 	}
 
+	public synchronized final boolean getArbitraryPrecision() {
+		return arbitraryPrecision;
+	}
+
+	public synchronized final void setArbitraryPrecision(
+			boolean arbitraryPrecision) {
+		if (this.arbitraryPrecision != arbitraryPrecision) {
+			stopDrawing();
+			this.arbitraryPrecision = arbitraryPrecision;
+			startDrawing();
+		}
+	}
+
+	public synchronized final int getPrecision() {
+		return precision;
+	}
+
+	public synchronized final void setPrecision(int precision) {
+		if (precision < PRECISION_AUTO || precision > PRECISION_FIXED_POINT)
+			throw new IllegalArgumentException("precision " + precision
+					+ " does not exist");
+
+		// re-render if precision is different
+		if (this.precision != precision) {
+			stopDrawing();
+			this.precision = precision;
+			startDrawing();
+		}
+	}
+
+	public synchronized final boolean getOpenCLRendering() {
+		return openCLRendering;
+	}
+
+	public synchronized final void setOpenCLRendering(boolean openCLRendering) {
+		if (this.openCLRendering != openCLRendering) {
+			stopDrawing();
+			this.openCLRendering = openCLRendering;
+			startDrawing();
+		}
+	}
+
+	public synchronized final int getPalette() {
+		return palette;
+	}
+
+	public synchronized final void setPalette(int palette) {
+		if (palette < 0 || palette >= Palette.PALETTE_COUNT)
+			throw new IllegalArgumentException("palette " + palette
+					+ " does not exist");
+
+		// recolour if palette is different
+		if (this.palette != palette) {
+			stopDrawing();
+			this.palette = palette;
+			colours = new Palette(palette, maxIteration, paletteOffset);
+			recolour();
+		}
+	}
+
+	public synchronized final double getPaletteOffset() {
+		return paletteOffset;
+	}
+
+	/**
+	 * Rotates the palette by a fraction of it, wrapping around, so that
+	 * stepping the offset cycles the colours of a finished image
+	 */
+	public synchronized final void setPaletteOffset(double paletteOffset) {
+		if (Double.isNaN(paletteOffset) || Double.isInfinite(paletteOffset))
+			throw new IllegalArgumentException("palette offset "
+					+ paletteOffset + " is not finite");
+
+		paletteOffset -= Math.floor(paletteOffset);
+
+		if (this.paletteOffset != paletteOffset) {
+			stopDrawing();
+			this.paletteOffset = paletteOffset;
+			colours = new Palette(palette, maxIteration, paletteOffset);
+			recolour();
+		}
+	}
+
 	public synchronized final int getMaxIteration() {
 		return maxIteration;
 	}
@@ -201,10 +408,10 @@ public class Model extends Observable implements ActionListener {
 			stopDrawing();
 			this.maxIteration = maxIteration;
 			
-			histogram = new AtomicInteger[maxIteration + 1];
-            for (int i = 0; i <= maxIteration; ++i) {
-                histogram[i] = new AtomicInteger();
-            }
+			histogram = new Histogram(maxIteration);
+
+			// the lookup table is built for a particular maxIteration
+			colours = new Palette(palette, maxIteration, paletteOffset);
 			
 			startDrawing();
 		}
@@ -236,7 +443,7 @@ public class Model extends Observable implements ActionListener {
 		if (this.histogramColouring != histogramColouring) {
 			stopDrawing();
 			this.histogramColouring = histogramColouring;
-			startDrawing();
+			recolour();
 		}
 	}
 
@@ -253,29 +460,89 @@ public class Model extends Observable implements ActionListener {
 		}
 	}
 
-	public synchronized final boolean getShuffleIndexes() {
-		return shuffleIndexes;
+	public synchronized final boolean getPowerOfTwoZoom() {
+		return powerOfTwoZoom;
+	}
+
+	/**
+	 * Snaps the factors of scale() to powers of two, which keeps part of
+	 * the pixel grid in place so its samples are not iterated again
+	 */
+	public synchronized final void setPowerOfTwoZoom(boolean powerOfTwoZoom) {
+		// only affects the next zoom
+		this.powerOfTwoZoom = powerOfTwoZoom;
+	}
+
+	public synchronized final boolean getProgressive() {
+		return progressive;
+	}
+
+	public synchronized final void setProgressive(boolean progressive) {
+		if (this.progressive != progressive) {
+			stopDrawing();
+			this.progressive = progressive;
+			startDrawing();
+		}
+	}
+
+	public synchronized final boolean getSubdivision() {
+		return subdivision;
 	}
 
-	public synchronized final void setShuffleIndexes(boolean shuffleIndexes) {
-		if (this.shuffleIndexes != shuffleIndexes) {
+	public synchronized final void setSubdivision(boolean subdivision) {
+		if (this.subdivision != subdivision) {
 			stopDrawing();
-			this.shuffleIndexes = shuffleIndexes;
+			this.subdivision = subdivision;
 			startDrawing();
 		}
 	}
 
 	public synchronized final float getProgress() {
-		// the number of processed indexes over the number of indexes
-		// if we are using a histogram, we will have double the indexes to
+		// the number of processed pixels over the number of pixels
+		// if we are using a histogram, we will have double the pixels to
 		// process
-		return (float) processed.get() / indexes.length / (histogramColouring ? 2 : 1);
+		return (float) processed.get() / iterations.length / (histogramColouring ? 2 : 1);
 	}
 
 	public synchronized final long getRenderTime() {
 		return renderTime;
 	}
 
+	/**
+	 * Counters of the renders, read without taking the Model's lock
+	 */
+	public final RenderMetrics getMetrics() {
+		return metrics;
+	}
+
+	public synchronized final long getTileCacheSize() {
+		return tileCache.getCapacity();
+	}
+
+	public synchronized final void setTileCacheSize(long tileCacheSize) {
+		tileCache.setCapacity(tileCacheSize);
+	}
+
+	/**
+	 * Fraction of tiles found in the tile cache since it was created
+	 */
+	public synchronized final double getTileCacheHitRate() {
+		return tileCache.getHitRate();
+	}
+
+	public synchronized final TileStore getTileStore() {
+		return tileStore;
+	}
+
+	/**
+	 * Sets the store on disk that tiles are looked up in and added to, null
+	 * to only keep them in memory
+	 */
+	public synchronized final void setTileStore(TileStore tileStore) {
+		// only affects tiles computed from now on
+		this.tileStore = tileStore;
+	}
+
 	// ==== Public Methods ====
 
 	public synchronized void show(Rectangle rectangle) {
@@ -305,10 +572,17 @@ public class Model extends Observable implements ActionListener {
 
 		// update the points to the current scale, and updates scale to the
 		// ratio of rectangle widths
-		point.setLocation(point.getX() + rectangle.x * scale, point.getY()
-				- rectangle.y * scale);
+		final MathContext mc = new MathContext(getDigits(scale));
+		preciseX = preciseX.add(new BigDecimal(rectangle.x * scale), mc);
+		preciseY = preciseY.subtract(new BigDecimal(rectangle.y * scale), mc);
 		scale = rectangle.width * scale / image.getWidth();
 
+		// snap the corner onto the pixel grid of the plane, so that tiles
+		// of the same scale line up wherever the view is
+		final BigDecimal unit = new BigDecimal(scale);
+		setCorner(preciseX.divide(unit, 0, RoundingMode.HALF_EVEN).toBigInteger(),
+				preciseY.negate().divide(unit, 0, RoundingMode.HALF_EVEN).toBigInteger());
+
 		// scale image to provide a pixelated preview while we render
 		BufferedImage newImage = new BufferedImage(rectangle.width,
 				rectangle.height, BufferedImage.TYPE_INT_RGB);
@@ -325,16 +599,47 @@ public class Model extends Observable implements ActionListener {
 		startDrawing();
 	}
 	
+	/**
+	 * Shows the view centred on a point at a scale
+	 *
+	 * @param x is the real part of the centre
+	 * @param y is the imaginary part of the centre
+	 * @param scale is the distance between pixels
+	 */
+	public synchronized void show(BigDecimal x, BigDecimal y, double scale) {
+		if (!(scale > 0))
+			throw new IllegalArgumentException("scale " + scale
+					+ " is not positive");
+
+		stopDrawing();
+
+		this.scale = scale;
+		setCorner(snapColumn(x, scale, image.getWidth()),
+				snapRow(y, scale, image.getHeight()));
+
+		setChanged();
+		notifyObservers();
+
+		startDrawing();
+	}
+
 	public synchronized void fit() {
 		stopDrawing();
 		
 		point.setLocation(-2.5, 1);
+		preciseX = BigDecimal.valueOf(-2.5);
+		preciseY = BigDecimal.ONE;
 		scale = 1d / 200d;
 		
 		show(new Rectangle(0, 0, (int) (3.5 / scale), (int) (2d / scale)));
 	}
 	
 	public synchronized void scale(int x, int y, double scale) {
+		if (powerOfTwoZoom) {
+			zoom(x, y, (int) Math.round(Math.log(scale) / Math.log(2)));
+			return;
+		}
+
 		final int width = image.getWidth(), height = image.getHeight();
 
 		final double w = width * scale;
@@ -346,9 +651,173 @@ public class Model extends Observable implements ActionListener {
 	}
 	
 	public synchronized void translate(int dx, int dy) {
-		show(new Rectangle(dx, dy, image.getWidth(), image.getHeight()));
+		stopDrawing();
+
+		final int width = image.getWidth(), height = image.getHeight();
+
+		// what is already known moves along with the view, so only the
+		// exposed strips are rendered
+		final Rectangle keep = new Rectangle(valid);
+		keep.translate(-dx, -dy);
+		kept = clip(keep, validStep, new Rectangle(0, 0, width, height));
+		keptStep = validStep;
+
+		if (!kept.isEmpty()) {
+			// rows are copied in the order that reads each before it is
+			// overwritten
+			final int w = width - Math.abs(dx);
+			for (int i = 0; i < height - Math.abs(dy); i++) {
+				final int y = dy >= 0 ? i : height - 1 - i;
+				System.arraycopy(iterations, (y + dy) * width + Math.max(dx, 0),
+						iterations, y * width + Math.max(-dx, 0), w);
+			}
+
+			final Graphics g = image.getGraphics();
+			g.copyArea(Math.max(dx, 0), Math.max(dy, 0), w, height
+					- Math.abs(dy), -dx, -dy);
+			g.dispose();
+		}
+
+		// the exposed strips are blank until they are rendered
+		final Graphics g = image.getGraphics();
+		g.setColor(Color.BLACK);
+		g.fillRect(dx >= 0 ? width - dx : 0, 0, Math.abs(dx), height);
+		g.fillRect(0, dy >= 0 ? height - dy : 0, width, Math.abs(dy));
+		g.dispose();
+
+		setCorner(column.add(BigInteger.valueOf(dx)),
+				row.add(BigInteger.valueOf(dy)));
+
+		setChanged();
+		notifyObservers();
+
+		startDrawing();
 	}
 	
+	/**
+	 * Zooms by a power of two around a pixel, which stays where it is
+	 * Zooming in puts every other pixel of every other row onto a pixel of
+	 * the old grid, zooming out puts the old view onto a quarter of the
+	 * new one, and those samples are kept rather than iterated again
+	 *
+	 * @param x is the column of the pixel to zoom around
+	 * @param y is the row of the pixel to zoom around
+	 * @param exponent is the power of two the scale is multiplied by, at
+	 * most MAX_ZOOM_SHIFT either way
+	 */
+	public synchronized void zoom(int x, int y, int exponent) {
+		if (exponent == 0)
+			return;
+
+		stopDrawing();
+
+		final boolean exact = isGridExact();
+		final int width = image.getWidth(), height = image.getHeight();
+		final int shift = Math.min(Math.abs(exponent), MAX_ZOOM_SHIFT);
+		final int n = 1 << shift;
+
+		// the new corner on the new grid, and where old pixel 0 lies on it
+		// zooming in, or where new pixel 0 lies on the old grid zooming out
+		final BigInteger newColumn, newRow;
+		final int dx, dy;
+		final BigInteger cx = column.add(BigInteger.valueOf(x));
+		final BigInteger cy = row.add(BigInteger.valueOf(y));
+
+		if (exponent < 0) {
+			newColumn = cx.shiftLeft(shift).subtract(BigInteger.valueOf(x));
+			newRow = cy.shiftLeft(shift).subtract(BigInteger.valueOf(y));
+			dx = x - n * x;
+			dy = y - n * y;
+			scale = Math.scalb(scale, -shift);
+		} else {
+			newColumn = cx.shiftRight(shift).subtract(BigInteger.valueOf(x));
+			newRow = cy.shiftRight(shift).subtract(BigInteger.valueOf(y));
+			dx = x - n * x - cx.mod(BigInteger.valueOf(n)).intValue();
+			dy = y - n * y - cy.mod(BigInteger.valueOf(n)).intValue();
+			scale = Math.scalb(scale, shift);
+		}
+
+		setCorner(newColumn, newRow);
+
+		final double[] newIterations = new double[width * height];
+		final BufferedImage newImage = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		final Rectangle bounds = new Rectangle(0, 0, width, height);
+
+		// with an exact power of two the coinciding samples are bit for bit
+		// what iterating them again would give, as long as both views
+		// iterate them in doubles
+		if (!exact || !isGridExact()) {
+			kept = new Rectangle();
+			keptStep = 1;
+		} else if (exponent < 0) {
+			kept = clip(new Rectangle(dx + n * valid.x, dy + n * valid.y, n
+					* valid.width, n * valid.height), n * validStep, bounds);
+			keptStep = n * validStep;
+		} else if (validStep == 1) {
+			final int left = ceilDiv(valid.x - dx, n);
+			final int top = ceilDiv(valid.y - dy, n);
+			kept = clip(new Rectangle(left, top, floorDiv(valid.x
+					+ valid.width - 1 - dx, n) + 1 - left, floorDiv(valid.y
+					+ valid.height - 1 - dy, n) + 1 - top), 1, bounds);
+			keptStep = 1;
+		} else {
+			kept = new Rectangle();
+			keptStep = 1;
+		}
+
+		for (int j = kept.y; j < kept.y + kept.height; j += keptStep) {
+			for (int i = kept.x; i < kept.x + kept.width; i += keptStep) {
+				final int old = exponent < 0 ? (j - dy) / n * width + (i - dx)
+						/ n : (dy + n * j) * width + dx + n * i;
+				newIterations[j * width + i] = iterations[old];
+			}
+		}
+
+		// scale image to provide a pixelated preview while we render,
+		// zooming in it already shows the kept pixels
+		final Graphics g = newImage.getGraphics();
+		if (exponent < 0) {
+			g.drawImage(image, dx, dy, n * width, n * height, null);
+		} else {
+			g.drawImage(image, (int) Math.floor((double) -dx / n),
+					(int) Math.floor((double) -dy / n), width / n, height / n,
+					null);
+
+			for (int j = kept.y; j < kept.y + kept.height; j++) {
+				for (int i = kept.x; i < kept.x + kept.width; i++) {
+					newImage.setRGB(i, j, colours.getColour(newIterations[j
+							* width + i]));
+				}
+			}
+		}
+		g.dispose();
+
+		image = newImage;
+		iterations = newIterations;
+
+		setChanged();
+		notifyObservers();
+
+		startDrawing();
+	}
+
+	/**
+	 * Blocks until the current render, if any, has finished or been
+	 * cancelled
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void waitForRender() throws InterruptedException {
+		final Thread thread;
+		synchronized (this) {
+			thread = renderThread;
+		}
+
+		if (thread != null)
+			thread.join();
+	}
+
 	public synchronized Point2D getPoint(int x, int y) {
 		Point2D p = new Point2D.Double();
 		p.setLocation(point.getX() + x * scale, point.getY() - y
@@ -361,74 +830,316 @@ public class Model extends Observable implements ActionListener {
 		return getPoint((int) p.getX(), (int) p.getY());
 	}
 
+	// ==== Package Methods ====
+
+	// shared with the renderers outside the Model, so every view picks its
+	// precision and places its pixels the same way
+
+	/**
+	 * Significant digits that resolve a pixel, with some to spare
+	 */
+	static int getDigits(double scale) {
+		if (scale <= 0)
+			return 20;
+
+		return 20 + (int) Math.max(0, -Math.floor(Math.log10(scale)));
+	}
+
+	/**
+	 * Column of the corner of a view centred on a point, snapped onto the
+	 * pixel grid of the plane
+	 */
+	static BigInteger snapColumn(BigDecimal x, double scale, int width) {
+		final BigDecimal unit = new BigDecimal(scale);
+		final BigDecimal left = x.subtract(unit.multiply(BigDecimal
+				.valueOf(width / 2)));
+
+		return left.divide(unit, 0, RoundingMode.HALF_EVEN).toBigInteger();
+	}
+
+	/**
+	 * Row of the corner of a view centred on a point, counting downwards,
+	 * snapped onto the pixel grid of the plane
+	 */
+	static BigInteger snapRow(BigDecimal y, double scale, int height) {
+		final BigDecimal unit = new BigDecimal(scale);
+		final BigDecimal top = y.add(unit.multiply(BigDecimal
+				.valueOf(height / 2)));
+
+		return top.negate().divide(unit, 0, RoundingMode.HALF_EVEN)
+				.toBigInteger();
+	}
+
+	/**
+	 * The largest coordinate of a view, which decides the units in the last
+	 * place
+	 */
+	static double getMagnitude(double x, double y, int width, int height,
+			double scale) {
+		return Math.max(Math.max(Math.abs(x), Math.abs(x + width * scale)),
+				Math.max(Math.abs(y), Math.abs(y - height * scale)));
+	}
+
+	/**
+	 * Whether pixels a scale apart are told apart by numbers of a unit in
+	 * the last place
+	 */
+	static boolean isResolved(double scale, double ulp) {
+		return scale > PRECISION_ULPS * ulp;
+	}
+
+	/**
+	 * The precision a view iterates in, double-double once doubles cannot
+	 * tell its pixels apart unless a precision is set
+	 */
+	static int selectPrecision(int precision, double scale, double magnitude) {
+		if (precision != PRECISION_AUTO)
+			return precision;
+
+		// floats are left out as the double rows are iterated several
+		// pixels at a time and end up faster
+		if (isResolved(scale, Math.ulp(magnitude)))
+			return PRECISION_DOUBLE;
+		else
+			return PRECISION_DOUBLE_DOUBLE;
+	}
+
+	/**
+	 * Whether a view iterates relative to a reference orbit, when asked to
+	 * or, with arbitrary precision, once double-doubles cannot tell its
+	 * pixels apart
+	 */
+	static boolean selectPerturbation(int algorithm,
+			boolean arbitraryPrecision, double scale, double magnitude) {
+		return algorithm == ALGORITHM_PERTURBATION
+				|| (arbitraryPrecision
+						&& algorithm != ALGORITHM_BURNING_SHIP_FRACTAL && !isResolved(
+							scale, Math.ulp(magnitude) * 0x1p-53));
+	}
+
+	/**
+	 * The rest of a value beyond the nearest double, the low half of it as
+	 * a double-double
+	 */
+	static double getLow(BigDecimal value) {
+		return value.subtract(new BigDecimal(value.doubleValue()))
+				.doubleValue();
+	}
+
+	/**
+	 * Iterates a pixel in double-double, adding its offset to the corner
+	 * with a two-sum
+	 *
+	 * @param offsetX is the real offset of the pixel from the corner
+	 * @param offsetY is the imaginary offset of the pixel from the corner
+	 */
+	static double iterateDoubleDouble(int algorithm, double cornerXHi,
+			double cornerXLo, double cornerYHi, double cornerYLo,
+			double offsetX, double offsetY, double maxRadius,
+			int maxIteration, double epsilon) {
+		double s = cornerXHi + offsetX, b = s - cornerXHi;
+		double e = (cornerXHi - (s - b)) + (offsetX - b) + cornerXLo;
+		final double cxHi = s + e, cxLo = e - (cxHi - s);
+
+		s = cornerYHi + offsetY;
+		b = s - cornerYHi;
+		e = (cornerYHi - (s - b)) + (offsetY - b) + cornerYLo;
+		final double cyHi = s + e, cyLo = e - (cyHi - s);
+
+		return algorithm == ALGORITHM_ESCAPE_TIME ? Algorithm
+				.doubleDoubleEscapeTime(cxHi, cxLo, cyHi, cyLo, maxRadius,
+						maxIteration, epsilon) : Algorithm
+				.doubleDoubleNormalisedIterationCount(cxHi, cxLo, cyHi,
+						cyLo, maxRadius, maxIteration, epsilon);
+	}
+
 	// ==== Private Helper Methods ====
 
-	private void refreshIndexes() {
-		// total number of pixels to process
-		final int total = image.getWidth() * image.getHeight();
+	private double getMagnitude() {
+		return getMagnitude(point.getX(), point.getY(), image.getWidth(),
+				image.getHeight(), scale);
+	}
 
-		// create and populate indexes with values
-		indexes = new int[total];
-		for (int i = 0; i < total; i++)
-			indexes[i] = i;
+	private int selectPrecision() {
+		return selectPrecision(precision, scale, getMagnitude());
+	}
 
-		if (shuffleIndexes) {
-			// use the Fisher-Yates shuffle
-			for (int i = 0; i < total; i++) {
-				int j = (int) (Math.random() * total);
+	private boolean selectPerturbation() {
+		return selectPerturbation(algorithm, arbitraryPrecision, scale,
+				getMagnitude());
+	}
 
-				int t = indexes[i];
-				indexes[i] = indexes[j];
-				indexes[j] = t;
-			}
+	private boolean isGridExact() {
+		// only doubles compute a pixel from its place on the grid alone,
+		// the other tiers start from the corner and perturbation from the
+		// reference point
+		return selectPrecision() == PRECISION_DOUBLE && !selectPerturbation();
+	}
+
+	private static Rectangle clip(Rectangle lattice, int step, Rectangle bounds) {
+		final Rectangle r = lattice.intersection(bounds);
+
+		// move the corner forward onto the next point of the lattice
+		final int sx = (lattice.x - r.x) & (step - 1);
+		final int sy = (lattice.y - r.y) & (step - 1);
+		r.x += sx;
+		r.y += sy;
+		r.width -= sx;
+		r.height -= sy;
+
+		return r.isEmpty() ? new Rectangle() : r;
+	}
+
+	private static int floorDiv(int a, int b) {
+		final int q = a / b;
+		return (a % b != 0 && (a < 0) != (b < 0)) ? q - 1 : q;
+	}
+
+	private static int ceilDiv(int a, int b) {
+		return -floorDiv(-a, b);
+	}
+
+	private void writeTile(int x, int y, int width, int height, int[] rgb) {
+		if (width <= 0 || height <= 0)
+			return;
+
+		// setDataElements copies straight into the DataBufferInt of the
+		// TYPE_INT_RGB image without going through the ColorModel, and marks
+		// the raster as modified so Java2D can re-accelerate it
+		image.getRaster().setDataElements(x, y, width, height, rgb);
+
+		// remember the region so observers only repaint what changed
+		synchronized (dirtyLock) {
+			if (dirty == null)
+				dirty = new Rectangle(x, y, width, height);
+			else
+				dirty.add(new Rectangle(x, y, width, height));
 		}
-		
-		iterations = new double[total];
 	}
 
-	private void stopDrawing() {
-		// interrupt each thread
-		for (Thread t : threads) {
-			t.interrupt();
+	private Rectangle takeDirty() {
+		synchronized (dirtyLock) {
+			final Rectangle region = (dirty == null) ? new Rectangle() : dirty;
+			dirty = null;
+			return region;
 		}
+	}
+
+	private void setCorner(BigInteger column, BigInteger row) {
+		final BigDecimal unit = new BigDecimal(scale);
+
+		this.column = column;
+		this.row = row;
+		preciseX = new BigDecimal(column).multiply(unit);
+		preciseY = new BigDecimal(row.negate()).multiply(unit);
+		point.setLocation(preciseX.doubleValue(), preciseY.doubleValue());
+	}
+
+	private void stopDrawing() {
+		if (renderThread != null) {
+			// abandon outstanding tiles and wait for the render to die
+			final long began = RenderEvents.begin();
+			renderThread.cancel();
 
-		// wait for threads to die
-		for (Thread t : threads) {
 			try {
-				t.join();
+				renderThread.join();
 			} catch (InterruptedException e) {
 			}
-		}
 
-		// clear list of threads
-		threads.clear();
+			RenderEvents.end(RenderEvents.STOP_DRAWING, began, processed.get());
+
+			renderThread = null;
+		}
 
-		// no more need to fire events
-		timer.stop();
+		// no more need to fire events, the timer only ever runs with
+		// observers and stopping it would start Swing's timer thread
+		if (countObservers() > 0)
+			timer.stop();
 	}
 
-	private void startDrawing() {
-		if (isReady) {
-			// create a CountDownLatch for the number of threads
-			runLatch = new CountDownLatch(threadCount);
+	private void recolour() {
+		final int width = image.getWidth();
+		final int height = image.getHeight();
 
-			// reset all indexes to 0
-			firstIndex.set(0);
-			secondIndex.set(0);
-			processed.set(0);
+		// only a finished image has every iteration count to recolour,
+		// anything less is rendered again
+		if (!isReady || validStep != 1
+				|| !valid.contains(new Rectangle(0, 0, width, height))) {
+			startDrawing();
+			return;
+		}
 
-			// reset the histograms
-			if (histogramColouring) {
-                for (int i = 0; i <= maxIteration; ++i) {
-                    histogram[i].set(0);
-                }
+		final long began = RenderEvents.begin();
+
+		if (histogramColouring) {
+			// the iteration counts are all that is needed for the histogram,
+			// so it is only counted once for the image
+			if (distribution == null) {
+				histogram.clear();
+				pool.invoke(new RecolourTask(0, height, null));
+				distribution = histogram.distribution(iterations.length);
 			}
 
-			// start timer and initialise time
+			pool.invoke(new RecolourTask(0, height, distribution));
+		} else {
+			pool.invoke(new RecolourTask(0, height, null));
+		}
+
+		RenderEvents.end(RenderEvents.RECOLOUR, began, iterations.length);
+
+		// the image is as complete as the render it came from
+		processed.set(iterations.length * (histogramColouring ? 2 : 1));
+
+		if (countObservers() > 0)
 			timer.start();
+	}
+
+	// the colour of a pixel under histogram colouring, the distribution
+	// being normalised from low over range
+	private int getHistogramColour(double iter, Histogram.Distribution cdf,
+			double low, double range) {
+		if (iter >= maxIteration)
+			return Color.BLACK.getRGB();
+
+		final int d = (int) Math.floor(iter);
+
+		// the relative gradient key point, the fraction past the bin being
+		// what iter % 1 gives for the counts, which are never negative, at
+		// a fraction of the cost
+		final double at = cdf.at(d);
+		double r = at - (at - cdf.at(d - 1)) * (1 - (iter - d));
+		r = (r - low) / range;
+		r = Math.min(Math.max(r, 0), 1);
+
+		// compute the interpolated color
+		return colours.getColour(r * maxIteration);
+	}
+
+	private void startDrawing() {
+		distribution = null;
+
+		// only a pan, a resize or a zoom keeps part of the previous render,
+		// any other change leaves nothing valid
+		valid = kept == null ? new Rectangle() : kept;
+		validStep = kept == null ? 1 : keptStep;
+		kept = null;
+		keptStep = 1;
+
+		if (isReady) {
+			// reset the progress
+			processed.set(0);
+
+			// reset the histograms
+			if (histogramColouring)
+				histogram.clear();
+
+			// start timer and initialise time, nobody needs refreshing
+			// without observers, so headless renders never start it
+			if (countObservers() > 0)
+				timer.start();
 			renderStart = System.currentTimeMillis();
 			
-			if (cardoidBulbCheck) {
+			if (openCLRendering) {
 				new GPUThread();
 //				final int width = image.getWidth();
 //				double[] vars = JOCLAlgorithm.getArray(point.getX(), point.getY(), width, scale, maxRadius, maxIteration);
@@ -445,31 +1156,38 @@ public class Model extends Observable implements ActionListener {
 //				
 //				renderTime = System.currentTimeMillis() - renderStart;
 			} else {
-				// create threadCount threads and add them to our arraylist
-				for (int i = 0; i < threadCount; i++) {
-					Thread t = new RenderThread();
-					threads.add(t);
-					t.start();
-				}
+				// hand the tiles over to the pool
+				renderThread = new RenderThread();
+				renderThread.start();
 			}
 		}
 	}
 
+	// ==== Observable Overrides ====
+
+	@Override
+	@SuppressWarnings("deprecation")
+	public synchronized void addObserver(Observer o) {
+		super.addObserver(o);
+
+		// a render already running refreshes its new observer as well
+		if (renderThread != null && renderThread.isAlive())
+			timer.start();
+	}
+
 	// ==== ActionListener Implementation ====
 
 	@Override
 	public void actionPerformed(ActionEvent e) {
 		// the only thing that should be firing an event must be the timer
 		if (e.getSource() == timer) {
-			// tell all observers to refresh
+			// tell all observers to refresh the region drawn since last time
 			setChanged();
-			notifyObservers();
+			notifyObservers(takeDirty());
 
-			// don't stop timer if thread still alive
-			for (Thread t : threads) {
-				if (t.isAlive())
-					return;
-			}
+			// don't stop timer if render still alive
+			if (renderThread != null && renderThread.isAlive())
+				return;
 
 			// stop timer as no processing is being done
 			timer.stop();
@@ -479,8 +1197,12 @@ public class Model extends Observable implements ActionListener {
 	// ==== GPU Thread ====
 	
 	private class GPUThread {
-		final int total = indexes.length;
+		final int total = iterations.length;
 		final int width = image.getWidth();
+		final int height = image.getHeight();
+		
+		// colours for the whole image, written in a single bulk copy
+		final int[] rgb = new int[total];
 		
 		
 		public GPUThread() {
@@ -493,26 +1215,26 @@ public class Model extends Observable implements ActionListener {
 				double[] imag = new double[total];
 				
 				// parameters for other things
-				double[] para = new double[5];
+				double[] para = new double[6];
 				
 				para[0] = point.getX();
 				para[1] = point.getY();
 				para[2] = scale;
 				para[3] = width;
 				para[4] = total;
+				para[5] = scale * PERIODICITY_EPSILON;
 				
 				OpenCLAlgorithm openCLAlgorithm;
 				
 				openCLAlgorithm = new OpenCLAlgorithm(para, iter, real, imag, maxRadius, maxIteration);
+				final long began = RenderEvents.begin();
 				openCLAlgorithm.execute(total);
+				RenderEvents.end(RenderEvents.GPU_EXECUTE, began, total);
 				openCLAlgorithm.dispose();
 
-				for (int i = 0; i < total && isActive(); i ++) {
-					final int x = i % width;
-					final int y = i / width;
+				final Histogram.Shard shard = histogramColouring ? histogram.shard() : null;
 
-					int rgb = 0;
-					
+				for (int i = 0; i < total && isActive(); i ++) {
 			        if (iter[i] < maxIteration) {
 			            double zn_abs = Math.sqrt(real[i] * real[i] + imag[i] * imag[i]);
 			            double u = Math.log(Math.log(zn_abs) / Math.log(maxRadius * maxRadius)) /
@@ -521,14 +1243,12 @@ public class Model extends Observable implements ActionListener {
 			            iter[i] = Math.min(iter[i], maxIteration);
 			        }
 					
-					rgb = Color.HSBtoRGB((float) iter[i] / maxIteration, 1, 1 - (float) iter[i] / maxIteration);				
-						
-					image.setRGB(x, y, (iter[i] >= maxIteration) ? Color.BLACK.getRGB() : rgb);
+					rgb[i] = colours.getColour(iter[i]);
 					
 					// logic for histogram colouring
 					if (histogramColouring) {
 						iterations[i] = iter[i];
-						histogram[(int) Math.floor(iter[i])].incrementAndGet();
+						shard.add((int) Math.floor(iter[i]));
 					}
 					
 					processed.incrementAndGet();
@@ -540,26 +1260,26 @@ public class Model extends Observable implements ActionListener {
 				float[] imag = new float[total];
 				
 				// parameters for other things
-				float[] para = new float[5];
+				float[] para = new float[6];
 				
 				para[0] = (float) point.getX();
 				para[1] = (float) point.getY();
 				para[2] = (float) scale;
 				para[3] = width;
 				para[4] = total;
+				para[5] = (float) (scale * PERIODICITY_EPSILON);
 				
 				FloatAlgorithm floatAlgorithm;
 				
 				floatAlgorithm = new FloatAlgorithm(para, iter, real, imag, (float) maxRadius, maxIteration);
+				final long began = RenderEvents.begin();
 				floatAlgorithm.execute(total);
+				RenderEvents.end(RenderEvents.GPU_EXECUTE, began, total);
 				floatAlgorithm.dispose();
 				
+				final Histogram.Shard shard = histogramColouring ? histogram.shard() : null;
+
 				for (int i = 0; i < total && isActive(); i ++) {
-					final int x = i % width;
-					final int y = i / width;
-					
-					int rgb = 0;
-					
 			        if (iter[i] < maxIteration) {
 			            double zn_abs = Math.sqrt(real[i] * real[i] + imag[i] * imag[i]);
 			            double u = Math.log(Math.log(zn_abs) / Math.log(maxRadius * maxRadius)) /
@@ -568,18 +1288,12 @@ public class Model extends Observable implements ActionListener {
 			            iter[i] = Math.min(iter[i], maxIteration);
 			        }
 					
-					try {
-						 rgb = Color.HSBtoRGB((float) iter[i] / maxIteration, 1, 1 - (float) iter[1] / maxIteration);
-					} catch (ArrayIndexOutOfBoundsException e) {
-						System.out.println(i + " " + total);
-					}					
-						
-					image.setRGB(x, y, (iter[i] >= maxIteration) ? Color.BLACK.getRGB() : rgb);
+					rgb[i] = colours.getColour(iter[i]);
 					
 					// logic for histogram colouring
 					if (histogramColouring) {
 						iterations[i] = iter[i];
-						histogram[(int) Math.floor(iter[i])].incrementAndGet();
+						shard.add((int) Math.floor(iter[i]));
 					}
 					
 					processed.incrementAndGet();
@@ -590,18 +1304,15 @@ public class Model extends Observable implements ActionListener {
 				secondRun();
 			}
 			
+			writeTile(0, 0, width, height, rgb);
+			
 			renderTime = System.currentTimeMillis() - renderStart;
 		}
 		
 		private void secondRun() {
             // compute the cumulative distribution function
-            double cdf[] = new double[maxIteration + 1];
-            double t = 0;
+            final Histogram.Distribution cdf = histogram.distribution(total);
             int min = maxIteration, max = 0;
-            for (int j = 0; j <= maxIteration && isActive(); ++j) {
-                t += Math.pow((double) histogram[j].get() / total, 1d / 4d);
-                cdf[j] = t;
-            }
 
             for (int i = 0; i < total; ++i) {
                 int x = (int)Math.floor(iterations[i]);
@@ -609,21 +1320,21 @@ public class Model extends Observable implements ActionListener {
                 if (x > max) max = x;
             }
 			
+			final double low = cdf.at(min), range = cdf.at(max) - low;
+
 			for (int i = 0; i < total; i ++) {
 				final double iter = iterations[i];
                 final int d = (int)Math.floor(iter);
 
                 // the relative gradient key point
-                double r = cdf[d] - (cdf[d] - (d > 0 ? cdf[d-1] : 0)) * (1 - iter % 1);
-                r = (r - cdf[min]) / (cdf[max] - cdf[min]);
+                final double at = cdf.at(d);
+                double r = at - (at - cdf.at(d - 1)) * (1 - iter % 1);
+                r = (r - low) / range;
                 r = Math.min(Math.max(r, 0), 1);
 
                 // compute the interpolated color
                 double colorIter = r * maxIteration;
-				int colour = Color.HSBtoRGB((float) (colorIter / maxIteration), 1, 1 - (float) colorIter / maxIteration);
-
-				int xy = i;
-                image.setRGB(xy % width, xy / width, iter >= maxIteration ? Color.BLACK.getRGB() : colour);
+                rgb[i] = iter >= maxIteration ? Color.BLACK.getRGB() : colours.getColour(colorIter);
 				
 				processed.getAndIncrement();
 			}			
@@ -635,164 +1346,837 @@ public class Model extends Observable implements ActionListener {
 		}
 	}
 
+	// ==== Recolour Task ====
+
+	/**
+	 * Recolours rows of a finished image from the iteration counts it keeps,
+	 * counting the histogram instead when there is histogram colouring but
+	 * no distribution yet
+	 */
+	@SuppressWarnings("serial")
+	private class RecolourTask extends RecursiveAction {
+		// rows recoloured without splitting further
+		private static final int ROWS = 16;
+
+		private final int from, to;
+		private final Histogram.Distribution cdf;
+
+		public RecolourTask(int from, int to, Histogram.Distribution cdf) {
+			this.from = from;
+			this.to = to;
+			this.cdf = cdf;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > ROWS) {
+				final int mid = (from + to) >>> 1;
+				invokeAll(new RecolourTask(from, mid, cdf), new RecolourTask(
+						mid, to, cdf));
+				return;
+			}
+
+			final int width = image.getWidth();
+
+			if (histogramColouring && cdf == null) {
+				final Histogram.Shard shard = histogram.shard();
+
+				for (int i = from * width; i < to * width; i++)
+					shard.add((int) Math.floor(iterations[i]));
+
+				return;
+			}
+
+			final int[] rgb = new int[(to - from) * width];
+
+			if (cdf == null) {
+				for (int i = 0; i < rgb.length; i++)
+					rgb[i] = colours.getColour(iterations[from * width + i]);
+			} else {
+				// normalised between the least and most iterated pixels,
+				// which the distribution knows as its first and last bins
+				final double low = cdf.at(cdf.getMin()), range = cdf.at(cdf
+						.getMax()) - low;
+
+				for (int i = 0; i < rgb.length; i++) {
+					rgb[i] = getHistogramColour(iterations[from * width + i],
+							cdf, low, range);
+				}
+			}
+
+			writeTile(0, from, width, to - from, rgb);
+		}
+	}
+
 	// ==== Rendering Thread ====
 
 	private class RenderThread extends Thread {
-		final int total = indexes.length;
 		final int width = image.getWidth();
+		final int height = image.getHeight();
+
+		// tiles lie on a grid fixed to the plane, so those at the edges of
+		// the image are clipped
+		final BigInteger size = BigInteger.valueOf(TILE_SIZE);
+		final int offsetX = column.mod(size).intValue();
+		final int offsetY = row.mod(size).intValue();
+		final int tilesWide = (width + offsetX + TILE_SIZE - 1) / TILE_SIZE;
+		final int total = tilesWide
+				* ((height + offsetY + TILE_SIZE - 1) / TILE_SIZE);
+
+		// grid position of the first tile, and the tiles taken from the cache
+		final BigInteger firstColumn = column.subtract(BigInteger.valueOf(offsetX)).divide(size);
+		final BigInteger firstRow = row.subtract(BigInteger.valueOf(offsetY)).divide(size);
+		final boolean[] cached = new boolean[total];
+
+		// tiles missing from the cache are looked up on disk
+		final TileStore store = tileStore;
+
+		// samples left over from the previous render that are not iterated
+		final Rectangle keep = valid;
+		final int keepStep = validStep;
+
+		// a pixel's coordinates come from its place on the grid of the
+		// plane, so they do not depend on where the view is
+		final double originX = column.doubleValue();
+		final double originY = row.doubleValue();
+
+		// block size of the first pass, halved on every following pass
+		final int start = progressive ? PREVIEW_STEP : 1;
+
+		// subdivision only holds for the Mandelbrot set
+		final boolean subdivide = subdivision
+				&& algorithm != ALGORITHM_BURNING_SHIP_FRACTAL;
+
+		// precision of the coordinates and iteration
+		final int tier = selectPrecision();
+
+		// orbits returning within a fraction of a pixel are periodic
+		final double epsilon = scale * PERIODICITY_EPSILON;
+		final double cornerXHi = preciseX.doubleValue();
+		final double cornerXLo = getLow(preciseX);
+		final double cornerYHi = preciseY.doubleValue();
+		final double cornerYLo = getLow(preciseY);
+		final FixedPointAlgorithm fixedPoint = tier == PRECISION_FIXED_POINT ? new FixedPointAlgorithm(
+				preciseX, preciseY, scale, maxRadius, maxIteration, epsilon) : null;
+
+		// iterate relative to a reference orbit at the centre of the image
+		final boolean perturbation = selectPerturbation();
+		final BigDecimal referenceX = preciseX.add(new BigDecimal(width / 2 * scale));
+		final BigDecimal referenceY = preciseY.subtract(new BigDecimal(height / 2 * scale));
+		private PerturbationAlgorithm reference;
+
+		// double precision rows are iterated several pixels at a time
+		final boolean batch = !perturbation
+				&& (tier == PRECISION_DOUBLE || algorithm == ALGORITHM_BURNING_SHIP_FRACTAL);
+
+		// cleared by stopDrawing() so that outstanding tiles are abandoned
+		private volatile boolean active = true;
+
+		// cumulative distribution function shared by the second pass
+		private Histogram.Distribution cdf;
+		private int min, max;
+
+		// the distribution of the samples of the passes so far, which the
+		// next pass is coloured by
+		private Histogram.Distribution estimate;
 
 		@Override
 		public void run() {
-			firstRun();
+			metrics.startRender();
 
-			// decrements the CountDownLatch
-			runLatch.countDown();
-			while (runLatch.getCount() > 0 && isActive()) {
-				try {
-					runLatch.await(10, TimeUnit.MILLISECONDS);
-				} catch (InterruptedException e) {
+			final long rendering = RenderEvents.begin();
+			RenderEvents.instant(RenderEvents.RENDER_START, iterations.length);
+
+			if (perturbation) {
+				// the reference orbit is shared by every pixel
+				reference = new PerturbationAlgorithm(referenceX, referenceY,
+						maxRadius, maxIteration, getDigits(scale), epsilon);
+			}
+
+			if (subdivide) {
+				// each tile is subdivided in a single pass
+				final long pass = RenderEvents.begin();
+				pool.invoke(new TileTask(0, total, 1, false));
+				RenderEvents.end(RenderEvents.PASS, pass, processed.get(), 1);
+			} else {
+				// compute every tile from coarse to fine blocks, blocking
+				// until the pool is done with each pass
+				for (int step = start; step >= 1 && isActive(); step /= 2) {
+					final long pass = RenderEvents.begin();
+					final int before = processed.get();
+					pool.invoke(new TileTask(0, total, step, false));
+					RenderEvents.end(RenderEvents.PASS, pass, processed.get()
+							- before, step);
+
+					if (histogramColouring && step > 1 && isActive())
+						estimate();
 				}
 			}
 
 			if (histogramColouring && isActive()) {
-				secondRun();
+				final long pass = RenderEvents.begin();
+				final int before = processed.get();
+
+				final RenderMetrics.Counters counters = metrics.counters();
+				final long began = System.nanoTime();
+				computeCDF();
+				counters.colourTime += System.nanoTime() - began;
+
+				pool.invoke(new TileTask(0, total, 1, true));
+				RenderEvents.end(RenderEvents.HISTOGRAM_PASS, pass,
+						processed.get() - before, 1);
+			}
+
+			// the whole view is final unless the render was cancelled
+			if (isActive()) {
+				valid = new Rectangle(0, 0, width, height);
+				validStep = 1;
+
+				if (histogramColouring)
+					distribution = cdf;
 			}
 
 			// update rendering time at completion of thread
 			renderTime = System.currentTimeMillis() - renderStart;
+			metrics.endRender();
+
+			RenderEvents.end(isActive() ? RenderEvents.RENDER_COMPLETE
+					: RenderEvents.RENDER_CANCELLED, rendering, processed.get());
 		}
 
-		private void firstRun() {
-			int index;			
+		public void cancel() {
+			active = false;
+			interrupt();
+		}
+
+		private void firstRun(int tile, int step) {
+			final int x0 = left(tile);
+			final int y0 = top(tile);
+			final int x1 = right(tile);
+			final int y1 = bottom(tile);
+			final int w = x1 - x0;
+
+			// progress is kept per tile and merged once it is done
+			int count = 0;
+
+			// whatever of the tile is not iterating is colouring
+			final RenderMetrics.Counters counters = metrics.counters();
+			final long began = System.nanoTime();
+			final long computing = counters.computeTime;
+
+			// kept and cached tiles are complete after the first pass
+			if (cached[tile] || (step == start && (keep(tile) || restore(tile)))) {
+				counters.colourTime += System.nanoTime() - began;
+				return;
+			}
+
+			// pixels kept in a partly kept tile are only counted
+			if (step == start)
+				count += countKept(x0, y0, x1, y1);
+
+
+			// colours are gathered for the whole tile and written in bulk
+			final int[] rgb = new int[w * (y1 - y0)];
+			final Histogram.Shard shard = histogramColouring ? histogram.shard() : null;
+
+			// every block is coloured again, by the estimated histogram
+			// once there is one
+			final Histogram.Distribution estimate = this.estimate;
+			final double low = estimate == null ? 0 : estimate.at(estimate
+					.getMin());
+			final double range = estimate == null ? 0 : estimate.at(estimate
+					.getMax()) - low;
+
+			// only samples on this pass' grid are visited, each filling the
+			// step x step block below and to the right of it
+			for (int y = y0; y < y1 && isActive(); y += step) {
+				// samples on the grid of the previous pass are reused, which
+				// leaves every other sample of rows already visited
+				if (step == start || ((y - y0) & step) != 0)
+					computeRow(y, x0, x1, step);
+				else
+					computeRow(y, x0 + step, x1, 2 * step);
+
+				for (int x = x0; x < x1; x += step) {
+					final int index = y * width + x;
+
+					if ((step == start || (((x - x0) | (y - y0)) & step) != 0)
+							&& !isKept(x, y)) {
+						// logic for histogram colouring
+						if (histogramColouring) {
+							shard.add((int) Math.floor(iterations[index]));
+						}
+
+						count++;
+					}
+
+					// if maximum iteration reached, the palette gives black
+					final int colour = estimate == null ? colours
+							.getColour(iterations[index]) : getHistogramColour(
+							iterations[index], estimate, low, range);
+					final int bx = Math.min(x + step, x1);
+					final int by = Math.min(y + step, y1);
+
+					for (int j = y; j < by; j++) {
+						for (int i = x; i < bx; i++) {
+							rgb[(j - y0) * w + i - x0] = colour;
+						}
+					}
+				}
+			}
+
+			// kept pixels show their own colour rather than a block's, apart
+			// from a lattice which the preview already shows
+			final Rectangle part = keepStep == 1 ? keep
+					.intersection(new Rectangle(x0, y0, w, y1 - y0))
+					: new Rectangle();
+			for (int y = part.y; y < part.y + part.height; y++) {
+				for (int x = part.x; x < part.x + part.width; x++) {
+					rgb[(y - y0) * w + x - x0] = colours.getColour(iterations[y * width + x]);
+				}
+			}
+
+			// abandoned tiles would only be partially filled
+			if (isActive()) {
+				writeTile(x0, y0, w, y1 - y0, rgb);
+
+				if (step == 1)
+					store(tile);
+			}
+
+			counters.colourTime += System.nanoTime() - began
+					- (counters.computeTime - computing);
+			processed.addAndGet(count);
+		}
+
+		private void subdivideRun(int tile) {
+			final int x0 = left(tile);
+			final int y0 = top(tile);
+			final int x1 = right(tile);
+			final int y1 = bottom(tile);
+			final int w = x1 - x0;
+
+			final RenderMetrics.Counters counters = metrics.counters();
+			long began = System.nanoTime();
+
+			if (keep(tile) || restore(tile)) {
+				counters.colourTime += System.nanoTime() - began;
+				return;
+			}
+
+			// the border of the tile is always iterated
+			computeRow(y0, x0, x1, 1);
+			computeRow(y1 - 1, x0, x1, 1);
+
+			began = System.nanoTime();
+			for (int y = y0 + 1; y < y1 - 1 && isActive(); y++) {
+				iterations[y * width + x0] = compute(x0, y, counters);
+				iterations[y * width + x1 - 1] = compute(x1 - 1, y, counters);
+			}
+			counters.computeTime += System.nanoTime() - began;
+
+			// fill or subdivide everything inside it
+			new RectangleTask(x0, y0, x1 - 1, y1 - 1).invoke();
 
-			while ((index = firstIndex.getAndIncrement()) < total && isActive()) {
-				// initialise iter to -1 as uninitialised
-				double iter = -1;
+			if (!isActive())
+				return;
 
-				// converting indexes to coordinates
-				final int x = indexes[index] % width;
-				final int y = indexes[index] / width;
+			// colour the tile once all of its pixels are known
+			began = System.nanoTime();
+			final int[] rgb = new int[w * (y1 - y0)];
+			final Histogram.Shard shard = histogramColouring ? histogram.shard() : null;
+			int count = 0;
 
-				// convert index to points on the plane
-				// TODO: implement arbitrary precision
-				final double cx = point.getX() + x * scale;
-				final double cy = point.getY() - y * scale;
+			for (int y = y0; y < y1; y++) {
+				for (int x = x0; x < x1; x++) {
+					final double iter = iterations[y * width + x];
 
-				// TODO: every new algorithm needs a check against this
-				if (cardoidBulbCheck && algorithm != 3) {
-					double p = Math.sqrt(Math.pow(cx - (1d / 4d), 2) + cy * cy);
+					// logic for histogram colouring
+					if (histogramColouring) {
+						shard.add((int) Math.floor(iter));
+					}
 
-					// cardoid bulb checking courtesy Wikipedia
-					if (cx < (p - 2 * p * p + (1d / 4d))
-							|| Math.pow(cx + 1, 2) + (cy * cy) < (1d / 16d))
-						iter = maxIteration;
+					rgb[count++] = colours.getColour(iter);
 				}
+			}
 
-				if (iter == -1) {
-					switch (algorithm) {
-					case ALGORITHM_ESCAPE_TIME:
-						iter = Algorithm.escapeTime(cx, cy, maxRadius,
-								maxIteration);
-						break;
-					case ALGORITHM_NORMALISED_ITERATION_COUNT:
-						iter = Algorithm.normalisedIterationCount(cx, cy,
-								maxRadius, maxIteration);
-						break;
-					case ALGORITHM_BURNING_SHIP_FRACTAL:
-						iter = Algorithm.burningShipFractal(cx, cy, maxRadius,
-								maxIteration);
-						break;
+			writeTile(x0, y0, w, y1 - y0, rgb);
+			store(tile);
+			counters.colourTime += System.nanoTime() - began;
+			processed.addAndGet(count);
+		}
+
+		private int left(int tile) {
+			return Math.max((tile % tilesWide) * TILE_SIZE - offsetX, 0);
+		}
+
+		private int top(int tile) {
+			return Math.max((tile / tilesWide) * TILE_SIZE - offsetY, 0);
+		}
+
+		private int right(int tile) {
+			return Math.min((tile % tilesWide + 1) * TILE_SIZE - offsetX, width);
+		}
+
+		private int bottom(int tile) {
+			return Math.min((tile / tilesWide + 1) * TILE_SIZE - offsetY, height);
+		}
+
+		private TileCache.Key key(int tile) {
+			// the tier and the use of a reference orbit are the ones this
+			// render picked, which the settings alone do not pin down, and
+			// subdivided tiles are told apart as their interiors are filled
+			return new TileCache.Key(algorithm, tier, perturbation,
+					subdivide, maxIteration, maxRadius, scale,
+					firstColumn.add(BigInteger.valueOf(tile % tilesWide)),
+					firstRow.add(BigInteger.valueOf(tile / tilesWide)));
+		}
+
+		private boolean isWhole(int tile) {
+			// clipped tiles are never cached
+			return right(tile) - left(tile) == TILE_SIZE
+					&& bottom(tile) - top(tile) == TILE_SIZE;
+		}
+
+		private boolean keep(int tile) {
+			final int x0 = left(tile), y0 = top(tile);
+			final int x1 = right(tile), y1 = bottom(tile);
+
+			if (keepStep != 1
+					|| !keep.contains(new Rectangle(x0, y0, x1 - x0, y1 - y0)))
+				return false;
+
+			// the image already shows the tile
+			processed.addAndGet(countKept(x0, y0, x1, y1));
+			cached[tile] = true;
+
+			return true;
+		}
+
+		private int countKept(int x0, int y0, int x1, int y1) {
+			final Rectangle part = clip(keep, keepStep, new Rectangle(x0, y0,
+					x1 - x0, y1 - y0));
+			final Histogram.Shard shard = histogramColouring ? histogram.shard() : null;
+			int count = 0;
+
+			for (int y = part.y; y < part.y + part.height; y += keepStep) {
+				for (int x = part.x; x < part.x + part.width; x += keepStep) {
+					// logic for histogram colouring
+					if (histogramColouring) {
+						shard.add((int) Math.floor(iterations[y * width + x]));
 					}
+
+					count++;
+				}
+			}
+
+			return count;
+		}
+
+		private boolean isKept(int x, int y) {
+			return keep.contains(x, y)
+					&& (((x - keep.x) | (y - keep.y)) & (keepStep - 1)) == 0;
+		}
+
+		private boolean restore(int tile) {
+			if (!isWhole(tile))
+				return false;
+
+			final TileCache.Key key = key(tile);
+			final int x0 = left(tile), y0 = top(tile);
+			final double[] values = tileCache.get(key);
+
+			if (values != null) {
+				for (int y = 0; y < TILE_SIZE; y++) {
+					System.arraycopy(values, y * TILE_SIZE, iterations, (y0 + y)
+							* width + x0, TILE_SIZE);
 				}
+			} else {
+				// rows are read straight out of the mapped file
+				final DoubleBuffer buffer = store == null ? null : store.get(key);
+				if (buffer == null)
+					return false;
 
-				// TODO: implement palette selection
-				int colour = Color.HSBtoRGB((float) (iter / maxIteration), 1, 1
-						- (float) iter / maxIteration);
+				for (int y = 0; y < TILE_SIZE; y++) {
+					buffer.get(iterations, (y0 + y) * width + x0, TILE_SIZE);
+				}
+			}
+
+			final int[] rgb = new int[TILE_SIZE * TILE_SIZE];
+			final Histogram.Shard shard = histogramColouring ? histogram.shard() : null;
 
-				// if maximum iteration reached, always black
-				image.setRGB(x, y, iter >= maxIteration ? Color.BLACK.getRGB()
-						: colour);
+			for (int i = 0; i < rgb.length; i++) {
+				final double iter = iterations[(y0 + i / TILE_SIZE) * width + x0 + i % TILE_SIZE];
 
 				// logic for histogram colouring
 				if (histogramColouring) {
-					iterations[index] = iter;
-					histogram[(int) Math.floor(iter)].incrementAndGet();
+					shard.add((int) Math.floor(iter));
 				}
 
-				processed.incrementAndGet();
+				rgb[i] = colours.getColour(iter);
 			}
+
+			writeTile(x0, y0, TILE_SIZE, TILE_SIZE, rgb);
+			processed.addAndGet(rgb.length);
+			cached[tile] = true;
+
+			return true;
 		}
-		
-		private void secondRun() {
-            // compute the cumulative distribution function
-            double cdf[] = new double[maxIteration + 1];
-            double t = 0;
-            int min = maxIteration, max = 0;
-            for (int j = 0; j <= maxIteration && isActive(); ++j) {
-                t += Math.pow((double) histogram[j].get() / total, 1d / 4d);
-                cdf[j] = t;
-            }
 
-            for (int i = 0; i < total; ++i) {
-                int x = (int)Math.floor(iterations[i]);
-                if (x < min) min = x;
-                if (x > max) max = x;
-            }
-			
-			int index;			
-			while ((index = secondIndex.getAndIncrement()) < total && isActive()) {
-				final double iter = iterations[index];
-                final int d = (int)Math.floor(iter);
+		private void store(int tile) {
+			if (!isWhole(tile))
+				return;
 
-                // the relative gradient key point
-                double r = cdf[d] - (cdf[d] - (d > 0 ? cdf[d-1] : 0)) * (1 - iter % 1);
-                r = (r - cdf[min]) / (cdf[max] - cdf[min]);
-                r = Math.min(Math.max(r, 0), 1);
+			final int x0 = left(tile), y0 = top(tile);
+			final double[] values = new double[TILE_SIZE * TILE_SIZE];
 
-                // compute the interpolated color
-                double colorIter = r * maxIteration;
-				int colour = Color.HSBtoRGB((float) (colorIter / maxIteration), 1, 1 - (float) colorIter / maxIteration);
-				
-//				t = 0;
-//				for (int i = 0; i < maxIteration; i++) {
-//					t += histogram[i].get();
-//				}
-//				
-//				double hue = 0;
-//				for (int i = 0; i < iter; i ++) {
-//					hue += (histogram[i].get() / t);
-//				}
-//				
-//				double hue2 = 0;
-//				for (int i = 0; i < iter - 1; i ++) {
-//					hue2 += (histogram[i].get() / t);
-//				}
-//				
-//				double hue1 = hue - (hue - hue2) * (1 - iter % 1);
-//							
-//				//hue = hue - (hue - (histogram[(int) Math.floor(iter - 1)].get() / t)) * (1 - iter % 1);
-//				int colour = Color.HSBtoRGB((float) hue1, 1, 1 - (float) hue1);
+			for (int y = 0; y < TILE_SIZE; y++) {
+				System.arraycopy(iterations, (y0 + y) * width + x0, values, y
+						* TILE_SIZE, TILE_SIZE);
+			}
 
-				int xy = indexes[index];
-                image.setRGB(xy % width, xy / width, iter >= maxIteration ? Color.BLACK.getRGB() : colour);
-				
-				processed.getAndIncrement();
+			final TileCache.Key key = key(tile);
+			tileCache.put(key, values);
+
+			if (store != null) {
+				try {
+					store.put(key, values);
+				} catch (IOException e) {
+					// the tile is still cached in memory
+					e.printStackTrace();
+				}
 			}
-		
-//			if (threadCount == 1) {
-//				System.out.println(blah.size());
-//				for (Double d : blah) {
-//					System.out.println(d);
-//				}
-//			}
-			
+		}
+
+		private double compute(int x, int y, RenderMetrics.Counters counters) {
+			final double iter = iterate(x, y);
+
+			counters.pixels++;
+			if (iter == Double.NEGATIVE_INFINITY) {
+				counters.inside++;
+				return maxIteration;
+			}
+
+			counters.iterations += (long) iter;
+			return iter;
+		}
+
+		// the value of a pixel, or negative infinity if it is inside the
+		// cardioid or bulb
+		private double iterate(int x, int y) {
+			if (perturbation) {
+				// offset of the pixel from the reference at the centre
+				final double dx = (x - width / 2) * scale;
+				final double dy = (height / 2 - y) * scale;
+
+				return algorithm == ALGORITHM_ESCAPE_TIME ? reference
+						.escapeTime(dx, dy) : reference
+						.normalisedIterationCount(dx, dy);
+			}
+
+			if (tier == PRECISION_FIXED_POINT
+					&& algorithm != ALGORITHM_BURNING_SHIP_FRACTAL)
+				return algorithm == ALGORITHM_ESCAPE_TIME ? fixedPoint
+						.escapeTime(x, y) : fixedPoint
+						.normalisedIterationCount(x, y);
+
+			if (tier == PRECISION_DOUBLE_DOUBLE
+					&& algorithm != ALGORITHM_BURNING_SHIP_FRACTAL)
+				return iterateDoubleDouble(algorithm, cornerXHi, cornerXLo,
+						cornerYHi, cornerYLo, x * scale, -y * scale,
+						maxRadius, maxIteration, epsilon);
+
+			// initialise iter to -1 as uninitialised
+			double iter = -1;
+
+			// convert index to points on the plane
+			final double cx = (originX + x) * scale;
+			final double cy = -(originY + y) * scale;
+
+			// left to compute() to count and fill in
+			if (isInside(cx, cy))
+				return Double.NEGATIVE_INFINITY;
+
+			if (iter == -1) {
+				switch (algorithm) {
+				case ALGORITHM_ESCAPE_TIME:
+					if (tier == PRECISION_FLOAT)
+						iter = Algorithm.floatEscapeTime((float) cx,
+								(float) cy, (float) maxRadius, maxIteration,
+								(float) epsilon);
+					else
+						iter = Algorithm.escapeTime(cx, cy, maxRadius,
+								maxIteration, epsilon);
+					break;
+				case ALGORITHM_NORMALISED_ITERATION_COUNT:
+					if (tier == PRECISION_FLOAT)
+						iter = Algorithm.floatNormalisedIterationCount(
+								(float) cx, (float) cy, (float) maxRadius,
+								maxIteration, (float) epsilon);
+					else
+						iter = Algorithm.normalisedIterationCount(cx, cy,
+								maxRadius, maxIteration, epsilon);
+					break;
+				case ALGORITHM_BURNING_SHIP_FRACTAL:
+					iter = Algorithm.burningShipFractal(cx, cy, maxRadius,
+							maxIteration, epsilon);
+					break;
+				}
+			}
+
+			return iter;
+		}
+
+		private void computeRow(int y, int from, int to, int step) {
+			final RenderMetrics.Counters counters = metrics.counters();
+			final long began = System.nanoTime();
+
+			if (!batch) {
+				for (int x = from; x < to; x += step) {
+					if (!isKept(x, y))
+						iterations[y * width + x] = compute(x, y, counters);
+				}
+
+				counters.computeTime += System.nanoTime() - began;
+				return;
+			}
+
+			// real parts of the pixels left to iterate, overwritten with
+			// their results
+			final double[] row = new double[Math.max(0, (to - from + step - 1) / step)];
+			final int[] columns = new int[row.length];
+			final double cy = -(originY + y) * scale;
+			int count = 0;
+			int inside = 0;
+
+			for (int x = from; x < to; x += step) {
+				final double cx = (originX + x) * scale;
+
+				if (isKept(x, y)) {
+					continue;
+				} else if (isInside(cx, cy)) {
+					iterations[y * width + x] = maxIteration;
+					inside++;
+				} else {
+					row[count] = cx;
+					columns[count++] = x;
+				}
+			}
+
+			switch (algorithm) {
+			case ALGORITHM_ESCAPE_TIME:
+				Algorithm.escapeTime(row, cy, count, maxRadius, maxIteration,
+						epsilon, row);
+				break;
+			case ALGORITHM_NORMALISED_ITERATION_COUNT:
+				Algorithm.normalisedIterationCount(row, cy, count, maxRadius,
+						maxIteration, epsilon, row);
+				break;
+			case ALGORITHM_BURNING_SHIP_FRACTAL:
+				Algorithm.burningShipFractal(row, cy, count, maxRadius,
+						maxIteration, epsilon, row);
+				break;
+			}
+
+			long iterated = 0;
+			for (int i = 0; i < count; i++) {
+				iterations[y * width + columns[i]] = row[i];
+				iterated += (long) row[i];
+			}
+
+			counters.pixels += count + inside;
+			counters.inside += inside;
+			counters.iterations += iterated;
+			counters.computeTime += System.nanoTime() - began;
+		}
+
+		private boolean isInside(double cx, double cy) {
+			// TODO: every new algorithm needs a check against this
+			if (!cardoidBulbCheck || algorithm == ALGORITHM_BURNING_SHIP_FRACTAL)
+				return false;
+
+			return Algorithm.isInside(cx, cy);
+		}
+
+		private void estimate() {
+			// every pass samples the image evenly, so the histogram so far
+			// estimates the final one well enough that the second pass only
+			// corrects the colours
+			final Histogram.Distribution sample = histogram
+					.estimate(processed.get());
+
+			// a sample of a single count cannot be normalised
+			if (sample.at(sample.getMax()) > sample.at(sample.getMin()))
+				estimate = sample;
+		}
+
+		private void computeCDF() {
+			// merge the threads' counts and compute the cumulative
+			// distribution function once for all tiles
+			final int pixels = iterations.length;
+			cdf = histogram.distribution(pixels);
+
+			min = maxIteration;
+			max = 0;
+			for (int i = 0; i < pixels; ++i) {
+				int x = (int) Math.floor(iterations[i]);
+				if (x < min) min = x;
+				if (x > max) max = x;
+			}
+		}
+
+		private void secondRun(int tile) {
+			final RenderMetrics.Counters counters = metrics.counters();
+			final long began = System.nanoTime();
+			final int x0 = left(tile);
+			final int y0 = top(tile);
+			final int x1 = right(tile);
+			final int y1 = bottom(tile);
+
+			int count = 0;
+
+			final int[] rgb = new int[(x1 - x0) * (y1 - y0)];
+			final double low = cdf.at(min), range = cdf.at(max) - low;
+			int y = y0;
+
+			for (; y < y1 && isActive(); y++) {
+				for (int x = x0; x < x1; x++) {
+					rgb[count++] = getHistogramColour(iterations[y * width + x],
+							cdf, low, range);
+				}
+			}
+
+			writeTile(x0, y0, x1 - x0, y - y0, rgb);
+			counters.colourTime += System.nanoTime() - began;
+			processed.addAndGet(count);
 		}
 
 		// used for future methods where we want to be able to
 		// interrupt the thread
 		private boolean isActive() {
-			// a thread is active if it is not interrupted
-			return !currentThread().isInterrupted();
+			// a render is active until it is cancelled
+			return active;
+		}
+
+		// splits a range of tiles in halves so idle workers can steal them
+		@SuppressWarnings("serial")
+		private class TileTask extends RecursiveAction {
+			private final int from, to, step;
+			private final boolean second;
+
+			public TileTask(int from, int to, int step, boolean second) {
+				this.from = from;
+				this.to = to;
+				this.step = step;
+				this.second = second;
+			}
+
+			@Override
+			protected void compute() {
+				if (!isActive() || from >= to)
+					return;
+
+				if (to - from == 1) {
+					if (second)
+						secondRun(from);
+					else if (subdivide)
+						subdivideRun(from);
+					else
+						firstRun(from, step);
+				} else {
+					final int mid = (from + to) >>> 1;
+					invokeAll(new TileTask(from, mid, step, second),
+							new TileTask(mid, to, step, second));
+				}
+			}
+		}
+
+		// Mariani-Silver subdivision of a rectangle whose border, given in
+		// inclusive coordinates, has already been iterated
+		@SuppressWarnings("serial")
+		private class RectangleTask extends RecursiveAction {
+			private final int left, top, right, bottom;
+
+			public RectangleTask(int left, int top, int right, int bottom) {
+				this.left = left;
+				this.top = top;
+				this.right = right;
+				this.bottom = bottom;
+			}
+
+			@Override
+			protected void compute() {
+				// nothing inside a rectangle that is one or two pixels thick
+				if (!isActive() || right - left < 2 || bottom - top < 2)
+					return;
+
+				// a border of a single value encloses only that value, as the
+				// level sets of the escape time are connected
+				if (isUniform()) {
+					final double iter = iterations[top * width + left];
+
+					for (int y = top + 1; y < bottom; y++) {
+						for (int x = left + 1; x < right; x++) {
+							iterations[y * width + x] = iter;
+						}
+					}
+
+					return;
+				}
+
+				// small rectangles cost less to iterate than to divide
+				if ((right - left - 1) * (bottom - top - 1) <= MIN_SUBDIVISION) {
+					for (int y = top + 1; y < bottom && isActive(); y++) {
+						computeRow(y, left + 1, right, 1);
+					}
+
+					return;
+				}
+
+				// otherwise iterate a line across the longer side, which
+				// becomes the shared border of both halves
+				if (right - left >= bottom - top) {
+					final int middle = (left + right) >>> 1;
+
+					final RenderMetrics.Counters counters = metrics.counters();
+					final long began = System.nanoTime();
+
+					for (int y = top + 1; y < bottom; y++) {
+						iterations[y * width + middle] = RenderThread.this
+								.compute(middle, y, counters);
+					}
+
+					counters.computeTime += System.nanoTime() - began;
+
+					invokeAll(new RectangleTask(left, top, middle, bottom),
+							new RectangleTask(middle, top, right, bottom));
+				} else {
+					final int middle = (top + bottom) >>> 1;
+
+					computeRow(middle, left + 1, right, 1);
+
+					invokeAll(new RectangleTask(left, top, right, middle),
+							new RectangleTask(left, middle, right, bottom));
+				}
+			}
+
+			private boolean isUniform() {
+				final double iter = iterations[top * width + left];
+
+				for (int x = left; x <= right; x++) {
+					if (iterations[top * width + x] != iter
+							|| iterations[bottom * width + x] != iter)
+						return false;
+				}
+
+				for (int y = top + 1; y < bottom; y++) {
+					if (iterations[y * width + left] != iter
+							|| iterations[y * width + right] != iter)
+						return false;
+				}
+
+				return true;
+			}
 		}
 	}
 
@@ -0,0 +1,189 @@
+import java.awt.Color;
+
+/**
+ * A precomputed colour lookup table mapping iteration counts to colours
+ * Built once per palette and maximum iteration so that colouring a pixel is
+ * an index plus a linear interpolation instead of a HSB conversion
+ */
+public class Palette {
+
+	// ==== Constants ====
+
+	/**
+	 * Hue and brightness both follow the iteration count
+	 */
+	public static final int PALETTE_HSB = 0;
+
+	/**
+	 * Black through red and yellow to white
+	 */
+	public static final int PALETTE_FIRE = 1;
+
+	/**
+	 * Blue, white and orange gradient
+	 */
+	public static final int PALETTE_GRADIENT = 2;
+
+	/**
+	 * Black to white
+	 */
+	public static final int PALETTE_GREYSCALE = 3;
+
+	/**
+	 * Number of palettes available
+	 */
+	public static final int PALETTE_COUNT = 4;
+
+	// number of entries in the lookup table
+	private static final int SIZE = 4096;
+
+	// colour of points that never escape
+	private static final int BLACK = Color.BLACK.getRGB();
+
+	// control points for the gradient palette
+	private static final double[] GRADIENT_STOPS = { 0, .16, .42, .6425, .8575, 1 };
+	private static final int[] GRADIENT_COLOURS = { 0x000764, 0x206bcb,
+			0xedffff, 0xffaa00, 0x000200, 0x000764 };
+
+	// ==== Properties ====
+
+	private final int palette;
+	private final int maxIteration;
+	private final double offset;
+
+	// one extra entry so interpolation never reads past the end
+	private final int[] table = new int[SIZE + 1];
+	private final double factor;
+
+	// ==== Constructor ====
+
+	/**
+	 * Builds the lookup table for a palette
+	 *
+	 * @param palette is one of the PALETTE_ constants
+	 * @param maxIteration is the iteration count mapped to the last entry
+	 */
+	public Palette(int palette, int maxIteration) {
+		this(palette, maxIteration, 0);
+	}
+
+	/**
+	 * Builds the lookup table for a rotated palette, stepping the offset
+	 * cycles its colours through the image
+	 *
+	 * @param palette is one of the PALETTE_ constants
+	 * @param maxIteration is the iteration count mapped to the last entry
+	 * @param offset is the fraction of the palette it is rotated by
+	 */
+	public Palette(int palette, int maxIteration, double offset) {
+		if (palette < 0 || palette >= PALETTE_COUNT)
+			throw new IllegalArgumentException("unknown palette " + palette);
+		if (!(offset >= 0 && offset < 1))
+			throw new IllegalArgumentException("offset " + offset
+					+ " is not in [0, 1)");
+
+		this.palette = palette;
+		this.maxIteration = maxIteration;
+		this.offset = offset;
+
+		// scale iterations onto table entries, in 1/256ths of an entry
+		factor = maxIteration > 0 ? 256d * SIZE / maxIteration : 0;
+
+		for (int i = 0; i <= SIZE; i++) {
+			// a rotated palette wraps around past its end
+			final double t = (double) i / SIZE + offset;
+			table[i] = evaluate(palette, (float) (offset == 0 ? t : t
+					- Math.floor(t)));
+		}
+	}
+
+	// ==== Accessors ====
+
+	public final int getPalette() {
+		return palette;
+	}
+
+	public final int getMaxIteration() {
+		return maxIteration;
+	}
+
+	public final double getOffset() {
+		return offset;
+	}
+
+	// ==== Public Methods ====
+
+	/**
+	 * Returns the colour of a (possibly smooth) iteration count
+	 *
+	 * @param iter is the iteration count
+	 * @return the RGB colour, black if iter reached the maximum iteration
+	 */
+	public final int getColour(double iter) {
+		// if maximum iteration reached, always black
+		if (iter >= maxIteration)
+			return BLACK;
+
+		// fixed point position with 8 bits of fraction between entries
+		final int position = (int) (Math.max(iter, 0) * factor);
+		final int index = position >> 8;
+		final int f = position & 0xff;
+
+		final int a = table[index];
+
+		// integer iteration counts land exactly on an entry
+		if (f == 0)
+			return a;
+
+		// interpolate red and blue together, then green, towards the next
+		// entry
+		final int b = table[index + 1];
+		final int rb = ((a & 0xff00ff) * (256 - f) + (b & 0xff00ff) * f) >>> 8;
+		final int g = ((a & 0xff00) * (256 - f) + (b & 0xff00) * f) >> 8;
+
+		return 0xff000000 | (rb & 0xff00ff) | (g & 0xff00);
+	}
+
+	// ==== Private Helper Methods ====
+
+	private static int evaluate(int palette, float t) {
+		switch (palette) {
+		case PALETTE_FIRE:
+			return rgb(3 * t, 3 * t - 1, 3 * t - 2);
+		case PALETTE_GRADIENT:
+			return gradient(t);
+		case PALETTE_GREYSCALE:
+			return rgb(t, t, t);
+		default:
+			return Color.HSBtoRGB(t, 1, 1 - t);
+		}
+	}
+
+	private static int gradient(float t) {
+		int i = 1;
+		while (i < GRADIENT_STOPS.length - 1 && t > GRADIENT_STOPS[i])
+			i++;
+
+		// linear interpolation between the surrounding control points
+		final double f = (t - GRADIENT_STOPS[i - 1])
+				/ (GRADIENT_STOPS[i] - GRADIENT_STOPS[i - 1]);
+		final int a = GRADIENT_COLOURS[i - 1], b = GRADIENT_COLOURS[i];
+
+		return rgb(mix(a >> 16, b >> 16, f), mix(a >> 8, b >> 8, f),
+				mix(a, b, f));
+	}
+
+	private static float mix(int a, int b, double f) {
+		a &= 0xff;
+		b &= 0xff;
+		return (float) ((a + (b - a) * f) / 255);
+	}
+
+	private static int rgb(float r, float g, float b) {
+		return new Color(clamp(r), clamp(g), clamp(b)).getRGB();
+	}
+
+	private static float clamp(float v) {
+		return Math.min(Math.max(v, 0), 1);
+	}
+}
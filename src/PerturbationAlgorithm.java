@@ -0,0 +1,184 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+
+/**
+ * Deep zoom Mandelbrot iteration using perturbation theory
+ * A single reference orbit is computed in arbitrary precision, every pixel is
+ * then iterated as a double offset from it:
+ * d(n+1) = 2 Z(n) d(n) + d(n)^2 + dc
+ * Glitches, where the offset grows comparable to the orbit it is relative to,
+ * are detected and corrected by rebasing the offset onto the start of the
+ * reference orbit
+ */
+public class PerturbationAlgorithm {
+
+	// ==== Constants ====
+
+	// points of the reference orbit first allocated, doubled as needed
+	private static final int INITIAL_LENGTH = 1024;
+
+	// ==== Properties ====
+
+	// reference orbit rounded to doubles, Z(0) = 0
+	private final double[] referenceX;
+	private final double[] referenceY;
+
+	// index of the last usable point in the reference orbit
+	private final int referenceLength;
+
+	private final double maxRadiusSquared;
+	private final int maxIteration;
+	private final double epsilon;
+
+	// ==== Constructor ====
+
+	/**
+	 * Computes the reference orbit of a point
+	 * The orbit stops short if the calling thread is interrupted, so a
+	 * cancelled render need not wait for it
+	 *
+	 * @param x is the real part of the reference point
+	 * @param y is the imaginary part of the reference point
+	 * @param maxRadius is the escape radius
+	 * @param maxIteration is the maximum number of iterations
+	 * @param precision is the number of significant digits to iterate with
+	 * @param epsilon is the periodicity tolerance, zero only accepts exact
+	 * repeats
+	 */
+	public PerturbationAlgorithm(BigDecimal x, BigDecimal y, double maxRadius,
+			int maxIteration, int precision, double epsilon) {
+		final MathContext mc = new MathContext(precision);
+
+		this.maxIteration = maxIteration;
+		this.maxRadiusSquared = maxRadius * maxRadius;
+		this.epsilon = epsilon;
+
+		// grown as the orbit goes, as most escape long before the maximum
+		double[] orbitX = new double[Math.min(maxIteration + 1, INITIAL_LENGTH)];
+		double[] orbitY = new double[orbitX.length];
+
+		BigDecimal zx = BigDecimal.ZERO;
+		BigDecimal zy = BigDecimal.ZERO;
+		int n = 0;
+
+		// iterate the reference until it escapes or runs out of iterations
+		while (n < maxIteration && !Thread.currentThread().isInterrupted()) {
+			final BigDecimal xt = zx.multiply(zx, mc).subtract(zy.multiply(zy, mc), mc).add(x, mc);
+			zy = zx.multiply(zy, mc).multiply(BigDecimal.valueOf(2), mc).add(y, mc);
+			zx = xt;
+
+			n++;
+			if (n == orbitX.length) {
+				final int length = (int) Math.min(maxIteration + 1L, 2L * n);
+				orbitX = Arrays.copyOf(orbitX, length);
+				orbitY = Arrays.copyOf(orbitY, length);
+			}
+			orbitX[n] = zx.doubleValue();
+			orbitY[n] = zy.doubleValue();
+
+			if (orbitX[n] * orbitX[n] + orbitY[n] * orbitY[n] >= maxRadiusSquared)
+				break;
+		}
+
+		// trimmed to the points reached
+		referenceX = orbitX.length == n + 1 ? orbitX : Arrays.copyOf(orbitX, n + 1);
+		referenceY = orbitY.length == n + 1 ? orbitY : Arrays.copyOf(orbitY, n + 1);
+		referenceLength = n;
+	}
+
+	// ==== Accessors ====
+
+	public final int getReferenceLength() {
+		return referenceLength;
+	}
+
+	// ==== Public Methods ====
+
+	/**
+	 * Escape time of the point offset from the reference point
+	 * Matches Algorithm.escapeTime for points within double precision
+	 *
+	 * @param dx is the real offset from the reference point
+	 * @param dy is the imaginary offset from the reference point
+	 * @return the iteration count
+	 */
+	public int escapeTime(double dx, double dy) {
+		return (int) iterate(dx, dy, false);
+	}
+
+	/**
+	 * Normalised iteration count of the point offset from the reference point
+	 * Matches Algorithm.normalisedIterationCount for points within double
+	 * precision
+	 *
+	 * @param dx is the real offset from the reference point
+	 * @param dy is the imaginary offset from the reference point
+	 * @return the smoothed iteration count
+	 */
+	public double normalisedIterationCount(double dx, double dy) {
+		return iterate(dx, dy, true);
+	}
+
+	// ==== Private Helper Methods ====
+
+	private double iterate(double cx, double cy, boolean normalised) {
+		// offset from the reference orbit, and the index into the orbit
+		double dx = 0, dy = 0;
+		int m = 0;
+
+		// earlier point of the orbit that periodicity is checked against,
+		// kept as an offset from the reference like the point itself
+		double sdx = 0, sdy = 0;
+		int sm = 0;
+
+		for (int iteration = 0; iteration < maxIteration; iteration++) {
+			final double zx = referenceX[m];
+			final double zy = referenceY[m];
+
+			// d = 2 Z d + d^2 + dc
+			final double dxt = 2 * (zx * dx - zy * dy) + dx * dx - dy * dy + cx;
+			dy = 2 * (zx * dy + zy * dx) + 2 * dx * dy + cy;
+			dx = dxt;
+			m++;
+
+			// the full value of the point
+			final double x = referenceX[m] + dx;
+			final double y = referenceY[m] + dy;
+			final double r = x * x + y * y;
+
+			if (r >= maxRadiusSquared) {
+				if (!normalised)
+					return iteration;
+
+				double u = Math.log(Math.log(Math.sqrt(r))
+						/ Math.log(maxRadiusSquared)) / Math.log(2);
+				return Math.min(iteration + 1 - Math.min(u, 1), maxIteration);
+			}
+
+			// glitch detection: once the point is nearer to zero than its
+			// offset, or the reference has escaped, precision is lost, so
+			// continue relative to the start of the reference orbit
+			if (r < dx * dx + dy * dy || m == referenceLength) {
+				dx = x;
+				dy = y;
+				m = 0;
+			}
+
+			// Brent's periodicity checking as in Algorithm.escapeTime, with
+			// the reference orbit cancelling when both points share it
+			if (Math.abs(referenceX[m] - referenceX[sm] + (dx - sdx))
+					+ Math.abs(referenceY[m] - referenceY[sm] + (dy - sdy)) <= epsilon)
+				return maxIteration;
+
+			final int n = iteration + 1;
+			if ((n & (n - 1)) == 0) {
+				sdx = dx;
+				sdy = dy;
+				sm = m;
+			}
+		}
+
+		return maxIteration;
+	}
+}
@@ -0,0 +1,167 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a PNG image a band of rows at a time, so that the image never has
+ * to be held in memory as a whole
+ * Rows are stored unfiltered as 8 bit RGB and deflated into IDAT chunks as
+ * they arrive
+ */
+public class PngWriter implements Closeable {
+
+	// ==== Constants ====
+
+	private static final byte[] SIGNATURE = { (byte) 137, 'P', 'N', 'G', '\r',
+			'\n', 26, '\n' };
+
+	// largest IDAT chunk written
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	// ==== Properties ====
+
+	private final OutputStream out;
+	private final int width;
+	private final int height;
+	private int rows;
+
+	private final Deflater deflater;
+	private final CRC32 crc = new CRC32();
+
+	// a row as stored, its filter type followed by the RGB samples
+	private final byte[] row;
+
+	// deflated data waiting to fill a chunk
+	private final byte[] chunk = new byte[CHUNK_SIZE];
+	private int count;
+
+	// ==== Constructor ====
+
+	/**
+	 * Writes the header of an image
+	 *
+	 * @param out receives the image, and is closed with the writer
+	 * @param width is the width of the image in pixels
+	 * @param height is the height of the image in pixels
+	 * @param level is the Deflater compression level
+	 * @throws IOException if the header cannot be written
+	 */
+	public PngWriter(OutputStream out, int width, int height, int level)
+			throws IOException {
+		if (width < 1 || height < 1)
+			throw new IllegalArgumentException("size " + width + "x" + height
+					+ " is empty");
+
+		this.out = out;
+		this.width = width;
+		this.height = height;
+		deflater = new Deflater(level);
+		row = new byte[1 + 3 * width];
+
+		// 8 bits per sample truecolour, not interlaced
+		final byte[] header = new byte[13];
+		putInt(header, 0, width);
+		putInt(header, 4, height);
+		header[8] = 8;
+		header[9] = 2;
+
+		out.write(SIGNATURE);
+		writeChunk("IHDR", header, header.length);
+	}
+
+	// ==== Public Methods ====
+
+	/**
+	 * Adds the next rows of the image
+	 *
+	 * @param rgb holds the rows one after the other as RGB integers
+	 * @param rows is the number of rows in rgb
+	 * @throws IOException if the image cannot be written
+	 */
+	public void write(int[] rgb, int rows) throws IOException {
+		if (this.rows + rows > height)
+			throw new IllegalArgumentException("image only has " + height
+					+ " rows");
+
+		for (int y = 0; y < rows; y++) {
+			int j = 1;
+			for (int x = y * width; x < (y + 1) * width; x++) {
+				final int colour = rgb[x];
+				row[j++] = (byte) (colour >> 16);
+				row[j++] = (byte) (colour >> 8);
+				row[j++] = (byte) colour;
+			}
+
+			deflater.setInput(row);
+			while (!deflater.needsInput())
+				deflate();
+		}
+
+		this.rows += rows;
+	}
+
+	/**
+	 * Finishes the image and closes the stream
+	 *
+	 * @throws IOException if the image is incomplete or cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (rows != height)
+				throw new IOException("only " + rows + " of " + height
+						+ " rows were written");
+
+			deflater.finish();
+			while (!deflater.finished())
+				deflate();
+
+			if (count > 0)
+				writeChunk("IDAT", chunk, count);
+			writeChunk("IEND", chunk, 0);
+		} finally {
+			deflater.end();
+			out.close();
+		}
+	}
+
+	// ==== Private Helper Methods ====
+
+	private void deflate() throws IOException {
+		count += deflater.deflate(chunk, count, CHUNK_SIZE - count);
+
+		if (count == CHUNK_SIZE) {
+			writeChunk("IDAT", chunk, count);
+			count = 0;
+		}
+	}
+
+	private void writeChunk(String type, byte[] data, int length)
+			throws IOException {
+		final byte[] head = new byte[8];
+		putInt(head, 0, length);
+		for (int i = 0; i < 4; i++)
+			head[4 + i] = (byte) type.charAt(i);
+
+		// the checksum covers the type and the data
+		crc.reset();
+		crc.update(head, 4, 4);
+		crc.update(data, 0, length);
+
+		final byte[] tail = new byte[4];
+		putInt(tail, 0, (int) crc.getValue());
+
+		out.write(head);
+		out.write(data, 0, length);
+		out.write(tail);
+	}
+
+	private static void putInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+}
@@ -0,0 +1,373 @@
+import java.awt.Dimension;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Times whole renders of Model without a window over a matrix of
+ * configurations, to see how they scale and to track regressions between
+ * builds
+ * Every render records the time to its first pixel and to completion, the
+ * CPU it used as a fraction of all cores and the memory it allocated, and
+ * the results are written as CSV or JSON
+ * Progress is sampled every millisecond, which bounds the resolution of the
+ * time to first pixel
+ */
+public class RenderBenchmark {
+
+	// ==== Constants ====
+
+	private static final String USAGE = "usage: java RenderBenchmark [options] results.csv|results.json\n"
+			+ "  -a <algorithms>    comma separated escape, normalised, burning (default all)\n"
+			+ "  -s <sizes>         comma separated WIDTHxHEIGHT (default 640x480,1280x720)\n"
+			+ "  -t <threads>       comma separated thread counts (default 1, 2, 4 .. 2x cores)\n"
+			+ "  -i <iterations>    maximum number of iterations (default 1000)\n"
+			+ "  -r <renders>       timed renders of each configuration (default 3)\n"
+			+ "  -w <renders>       untimed renders before the matrix (default 2)";
+
+	private static final String[] ALGORITHMS = { "escape", "normalised",
+			"burning" };
+
+	// the boolean settings swept, each off then on
+	private static final String[] SWITCHES = { "progressive", "histogram",
+			"cardioidBulbCheck" };
+
+	// how often a render's progress is looked at
+	private static final long SAMPLE_MILLIS = 1;
+
+	// ==== Properties ====
+
+	private final List<Integer> algorithms = new ArrayList<Integer>();
+	private final List<Dimension> sizes = new ArrayList<Dimension>();
+	private final List<Integer> threads = new ArrayList<Integer>();
+	private int maxIteration = 1000;
+	private int renders = 3;
+	private int warmupRenders = 2;
+
+	private final com.sun.management.OperatingSystemMXBean os = (com.sun.management.OperatingSystemMXBean) ManagementFactory
+			.getOperatingSystemMXBean();
+	private final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	// ==== Main ====
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		final RenderBenchmark benchmark = new RenderBenchmark();
+		File output = null;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				final String arg = args[i];
+
+				if (!arg.startsWith("-") || arg.length() != 2) {
+					if (output != null)
+						throw new IllegalArgumentException("unexpected " + arg);
+
+					output = new File(arg);
+					continue;
+				}
+
+				if (i + 1 == args.length)
+					throw new IllegalArgumentException(arg + " needs a value");
+
+				final String value = args[++i];
+
+				try {
+					switch (arg.charAt(1)) {
+					case 'a':
+						for (String name : value.split(","))
+							benchmark.algorithms.add(indexOf(ALGORITHMS, name));
+						break;
+					case 's':
+						for (String size : value.split(",")) {
+							final String[] wh = size.split("x");
+							if (wh.length != 2)
+								throw new IllegalArgumentException("size "
+										+ size + " is not WIDTHxHEIGHT");
+
+							benchmark.sizes.add(new Dimension(Integer
+									.parseInt(wh[0]), Integer.parseInt(wh[1])));
+						}
+						break;
+					case 't':
+						for (String count : value.split(","))
+							benchmark.threads.add(Integer.parseInt(count));
+						break;
+					case 'i':
+						benchmark.maxIteration = Integer.parseInt(value);
+						break;
+					case 'r':
+						benchmark.renders = Integer.parseInt(value);
+						break;
+					case 'w':
+						benchmark.warmupRenders = Integer.parseInt(value);
+						break;
+					default:
+						throw new IllegalArgumentException("unknown option "
+								+ arg);
+					}
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException(arg + " is not a number: "
+							+ value);
+				}
+			}
+
+			if (output == null)
+				throw new IllegalArgumentException("no output file");
+			if (!output.getName().endsWith(".csv")
+					&& !output.getName().endsWith(".json"))
+				throw new IllegalArgumentException("output must be .csv or .json");
+			if (benchmark.renders < 1 || benchmark.warmupRenders < 0)
+				throw new IllegalArgumentException("there must be a timed render");
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+
+		try {
+			benchmark.run(output);
+			System.exit(0);
+		} catch (IOException e) {
+			System.err.println("cannot write " + output + ": " + e.getMessage());
+			System.exit(1);
+		} catch (InterruptedException e) {
+			System.exit(1);
+		}
+	}
+
+	// ==== Private Helper Methods ====
+
+	private void run(File output) throws IOException, InterruptedException {
+		final int cores = Runtime.getRuntime().availableProcessors();
+
+		if (algorithms.isEmpty()) {
+			for (int a = 0; a < ALGORITHMS.length; a++)
+				algorithms.add(a);
+		}
+		if (sizes.isEmpty()) {
+			sizes.add(new Dimension(640, 480));
+			sizes.add(new Dimension(1280, 720));
+		}
+		if (threads.isEmpty()) {
+			for (int t = 1; t < 2 * cores; t *= 2)
+				threads.add(t);
+			threads.add(2 * cores);
+		}
+
+		System.out.printf("java %s, %s %s, %d cores%n",
+				System.getProperty("java.version"),
+				System.getProperty("os.name"), System.getProperty("os.arch"),
+				cores);
+
+		// the JIT settles on the first configuration before anything counts
+		for (int i = 0; i < warmupRenders; i++)
+			render(algorithms.get(0), sizes.get(0), threads.get(0), 0);
+
+		final List<Result> results = new ArrayList<Result>();
+
+		for (int algorithm : algorithms) {
+			for (Dimension size : sizes) {
+				for (int threadCount : threads) {
+					for (int switches = 0; switches < 1 << SWITCHES.length; switches++) {
+						for (int i = 0; i < renders; i++) {
+							final Result result = render(algorithm, size,
+									threadCount, switches);
+							results.add(result);
+							System.out.println(result.toCSV());
+						}
+					}
+				}
+			}
+		}
+
+		final PrintWriter out = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(output), "UTF-8"));
+
+		try {
+			if (output.getName().endsWith(".json")) {
+				out.printf(Locale.ROOT,
+						"{\"java\":\"%s\",\"os\":\"%s %s\",\"cores\":%d,"
+								+ "\"maxIteration\":%d,\"renders\":[%n",
+						System.getProperty("java.version"),
+						System.getProperty("os.name"),
+						System.getProperty("os.arch"), cores, maxIteration);
+				for (int i = 0; i < results.size(); i++)
+					out.println(results.get(i).toJSON()
+							+ (i + 1 < results.size() ? "," : ""));
+				out.println("]}");
+			} else {
+				out.println(Result.CSV_HEADER);
+				for (Result result : results)
+					out.println(result.toCSV());
+			}
+		} finally {
+			out.close();
+		}
+
+		if (out.checkError())
+			throw new IOException("write failed");
+	}
+
+	private Result render(int algorithm, Dimension size, int threadCount,
+			int switches) throws InterruptedException {
+		final Result result = new Result(algorithm, size, threadCount, switches);
+
+		// set everything up before the one render, as Batch does
+		final Model model = new Model();
+		model.setReady(false);
+		model.setTileCacheSize(0);
+		model.setThreadCount(threadCount);
+		model.setSize(size);
+		model.setAlgorithm(algorithm);
+		model.setMaxIteration(maxIteration);
+		model.setProgressive(result.isOn(0));
+		model.setHistogramColouring(result.isOn(1));
+		model.setCardoibBulbCheck(result.isOn(2));
+		model.show(BigDecimal.valueOf(-0.75), BigDecimal.ZERO,
+				Math.max(3.5 / size.width, 2.5 / size.height));
+
+		final Thread self = Thread.currentThread();
+		final Map<Long, Long> allocated = new HashMap<Long, Long>();
+		sampleAllocations(allocated, self);
+		final Map<Long, Long> before = new HashMap<Long, Long>(allocated);
+
+		final long cpu = os.getProcessCpuTime();
+		final long start = System.nanoTime();
+		model.setReady(true);
+
+		// a render is over once the thread driving it has been joined
+		final boolean[] done = new boolean[1];
+		final Thread waiter = new Thread("RenderBenchmark wait") {
+			@Override
+			public void run() {
+				try {
+					model.waitForRender();
+				} catch (InterruptedException e) {
+				}
+
+				synchronized (done) {
+					done[0] = true;
+				}
+			}
+		};
+		waiter.start();
+
+		while (true) {
+			synchronized (done) {
+				if (done[0])
+					break;
+			}
+
+			if (result.firstPixel < 0 && model.getProgress() > 0)
+				result.firstPixel = System.nanoTime() - start;
+
+			sampleAllocations(allocated, self);
+			Thread.sleep(SAMPLE_MILLIS);
+		}
+
+		result.complete = System.nanoTime() - start;
+		waiter.join();
+		sampleAllocations(allocated, self);
+
+		if (result.firstPixel < 0)
+			result.firstPixel = result.complete;
+
+		result.utilisation = (os.getProcessCpuTime() - cpu)
+				/ ((double) result.complete * Runtime.getRuntime()
+						.availableProcessors());
+
+		// threads that came and went between samples are missed
+		for (Map.Entry<Long, Long> entry : allocated.entrySet()) {
+			final Long base = before.get(entry.getKey());
+			result.allocated += entry.getValue() - (base == null ? 0 : base);
+		}
+
+		return result;
+	}
+
+	private void sampleAllocations(Map<Long, Long> allocated, Thread self) {
+		final long[] ids = threadBean.getAllThreadIds();
+		final long[] bytes = threadBean.getThreadAllocatedBytes(ids);
+
+		for (int i = 0; i < ids.length; i++) {
+			if (ids[i] != self.getId() && bytes[i] >= 0)
+				allocated.put(ids[i], bytes[i]);
+		}
+	}
+
+	private static int indexOf(String[] names, String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name))
+				return i;
+		}
+
+		throw new IllegalArgumentException("unknown value " + name);
+	}
+
+	// ==== Result ====
+
+	// the configuration of a render and what it took
+	private static final class Result {
+		private static final String CSV_HEADER = "algorithm,width,height,threads,"
+				+ "progressive,histogram,cardioidBulbCheck,firstPixelMs,"
+				+ "completeMs,cpuUtilisation,allocatedMB,allocationMBps";
+
+		private final int algorithm;
+		private final Dimension size;
+		private final int threadCount;
+		private final int switches;
+
+		// times in nanoseconds
+		private long firstPixel = -1;
+		private long complete;
+		private double utilisation;
+		private long allocated;
+
+		private Result(int algorithm, Dimension size, int threadCount,
+				int switches) {
+			this.algorithm = algorithm;
+			this.size = size;
+			this.threadCount = threadCount;
+			this.switches = switches;
+		}
+
+		private boolean isOn(int index) {
+			return (switches >> index & 1) != 0;
+		}
+
+		private String toCSV() {
+			return String.format(Locale.ROOT,
+					"%s,%d,%d,%d,%b,%b,%b,%.3f,%.3f,%.3f,%.3f,%.1f",
+					ALGORITHMS[algorithm], size.width, size.height,
+					threadCount, isOn(0), isOn(1), isOn(2), firstPixel / 1e6,
+					complete / 1e6, utilisation, allocated / 1e6, allocated
+							/ 1e6 / (complete / 1e9));
+		}
+
+		private String toJSON() {
+			return String.format(Locale.ROOT,
+					"{\"algorithm\":\"%s\",\"width\":%d,\"height\":%d,"
+							+ "\"threads\":%d,\"%s\":%b,\"%s\":%b,\"%s\":%b,"
+							+ "\"firstPixelMs\":%.3f,\"completeMs\":%.3f,"
+							+ "\"cpuUtilisation\":%.3f,\"allocatedMB\":%.3f,"
+							+ "\"allocationMBps\":%.1f}",
+					ALGORITHMS[algorithm], size.width, size.height,
+					threadCount, SWITCHES[0], isOn(0), SWITCHES[1], isOn(1),
+					SWITCHES[2], isOn(2), firstPixel / 1e6, complete / 1e6,
+					utilisation, allocated / 1e6, allocated / 1e6
+							/ (complete / 1e9));
+		}
+	}
+}
@@ -0,0 +1,202 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Records timed events of rendering and painting, for profiling a session
+ * to see where an interaction spends its time
+ * Recording is switched on by naming a file in the mandelbrot.events system
+ * property, and the events are written to it as CSV when the program exits
+ * Switched off, every call tests a constant and returns, which the JIT
+ * removes altogether
+ * The most recent events are kept, older ones are dropped once the buffer
+ * is full
+ */
+public final class RenderEvents {
+
+	// ==== Constants ====
+
+	/**
+	 * A render started, with the pixels it covers
+	 */
+	public static final int RENDER_START = 0;
+
+	/**
+	 * A pass over the tiles at one block size, with the pixels it finished
+	 */
+	public static final int PASS = 1;
+
+	/**
+	 * The histogram's cumulative distribution and second pass
+	 */
+	public static final int HISTOGRAM_PASS = 2;
+
+	/**
+	 * A render ran to the end, with the pixels it finished
+	 */
+	public static final int RENDER_COMPLETE = 3;
+
+	/**
+	 * A render was cancelled, with the pixels it finished
+	 */
+	public static final int RENDER_CANCELLED = 4;
+
+	/**
+	 * stopDrawing() waited for a render to die
+	 */
+	public static final int STOP_DRAWING = 5;
+
+	/**
+	 * A GPU kernel was executed over the whole image
+	 */
+	public static final int GPU_EXECUTE = 6;
+
+	/**
+	 * The view was painted
+	 */
+	public static final int PAINT = 7;
+
+	/**
+	 * A finished image was recoloured without iterating
+	 */
+	public static final int RECOLOUR = 8;
+
+	private static final String[] NAMES = { "renderStart", "pass",
+			"histogramPass", "renderComplete", "renderCancelled",
+			"stopDrawing", "gpuExecute", "paint", "recolour" };
+
+	private static final String PROPERTY = "mandelbrot.events";
+
+	// events kept before the oldest are dropped
+	private static final int CAPACITY = 1 << 16;
+
+	private static final boolean ENABLED = System.getProperty(PROPERTY) != null;
+
+	// times are written relative to when recording began
+	private static final long ORIGIN = System.nanoTime();
+
+	// ==== Properties ====
+
+	// a ring of events, count of all recorded so far
+	private static final int[] types = new int[ENABLED ? CAPACITY : 0];
+	private static final String[] threads = new String[types.length];
+	private static final long[] starts = new long[types.length];
+	private static final long[] durations = new long[types.length];
+	private static final long[] pixels = new long[types.length];
+	private static final int[] steps = new int[types.length];
+	private static long count;
+
+	static {
+		if (ENABLED) {
+			final File file = new File(System.getProperty(PROPERTY));
+
+			Runtime.getRuntime().addShutdownHook(new Thread("RenderEvents") {
+				@Override
+				public void run() {
+					try {
+						write(file);
+					} catch (IOException e) {
+						System.err.println("cannot write " + file + ": "
+								+ e.getMessage());
+					}
+				}
+			});
+		}
+	}
+
+	// ==== Constructor ====
+
+	private RenderEvents() {
+	}
+
+	// ==== Public Methods ====
+
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Starts timing an event
+	 *
+	 * @return the time to pass to end()
+	 */
+	public static long begin() {
+		return ENABLED ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Records an event that took no time
+	 *
+	 * @param type is one of the event constants
+	 * @param pixels is the number of pixels it concerns
+	 */
+	public static void instant(int type, long pixels) {
+		if (ENABLED)
+			record(type, System.nanoTime(), 0, pixels, 0);
+	}
+
+	/**
+	 * Records an event timed from begin()
+	 *
+	 * @param type is one of the event constants
+	 * @param began is what begin() returned
+	 * @param pixels is the number of pixels it concerns
+	 */
+	public static void end(int type, long began, long pixels) {
+		end(type, began, pixels, 0);
+	}
+
+	/**
+	 * Records a pass timed from begin()
+	 *
+	 * @param type is one of the event constants
+	 * @param began is what begin() returned
+	 * @param pixels is the number of pixels it concerns
+	 * @param step is the block size of the pass
+	 */
+	public static void end(int type, long began, long pixels, int step) {
+		if (ENABLED)
+			record(type, began, System.nanoTime() - began, pixels, step);
+	}
+
+	// ==== Private Helper Methods ====
+
+	private static synchronized void record(int type, long start,
+			long duration, long count, int step) {
+		final int i = (int) (RenderEvents.count++ % CAPACITY);
+
+		types[i] = type;
+		threads[i] = Thread.currentThread().getName();
+		starts[i] = start;
+		durations[i] = duration;
+		pixels[i] = count;
+		steps[i] = step;
+	}
+
+	private static synchronized void write(File file) throws IOException {
+		final PrintWriter out = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(file), "UTF-8"));
+
+		try {
+			out.println("event,thread,startMs,durationMs,pixels,step");
+
+			// oldest first
+			for (long n = Math.max(0, count - CAPACITY); n < count; n++) {
+				final int i = (int) (n % CAPACITY);
+
+				out.printf(Locale.ROOT, "%s,\"%s\",%.3f,%.3f,%d,%d%n",
+						NAMES[types[i]], threads[i].replace("\"", "\"\""),
+						(starts[i] - ORIGIN) / 1e6, durations[i] / 1e6,
+						pixels[i], steps[i]);
+			}
+		} finally {
+			out.close();
+		}
+
+		if (out.checkError())
+			throw new IOException("write failed");
+	}
+}
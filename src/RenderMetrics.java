@@ -0,0 +1,274 @@
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters of the work done by the renders of a Model, for JMX
+ * Every thread counts into its own Counters with plain fields, so the
+ * render pays no more than an add per row or tile, and the counters are
+ * only summed when read
+ * Reads are not synchronised with the render, which is fine for watching
+ * it, and leave the Model's lock alone
+ */
+public class RenderMetrics implements RenderMetricsMXBean {
+
+	// ==== Properties ====
+
+	// the counters of every live thread that has done any work, and the
+	// totals of those that have gone, retired by a replaced or shrunk pool
+	private final List<Counters> all = new CopyOnWriteArrayList<Counters>();
+	private final Counters retired = new Counters(null);
+
+	private final ThreadLocal<Counters> local = new ThreadLocal<Counters>() {
+		@Override
+		protected Counters initialValue() {
+			final Counters counters = new Counters(Thread.currentThread());
+			all.add(counters);
+			return counters;
+		}
+	};
+
+	// totals and the busy time of every thread when the render started
+	private volatile Counters base = new Counters(null);
+	private volatile Map<Counters, Long> baseBusy = new HashMap<Counters, Long>();
+
+	private volatile long renderCount;
+	private volatile long renderStart, renderEnd;
+	private volatile boolean rendering;
+
+	private volatile ForkJoinPool pool;
+
+	// ==== Public Methods ====
+
+	/**
+	 * Registers these metrics with the platform MBean server, so they can
+	 * be watched from JConsole or VisualVM
+	 *
+	 * @param name tells apart the Models of the program
+	 */
+	public void register(String name) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+					new ObjectName("Mandelbrot:type=RenderMetrics,name=" + name));
+		} catch (JMException e) {
+			// the render goes on unwatched
+			e.printStackTrace();
+		}
+	}
+
+	// ==== Accessors ====
+
+	@Override
+	public long getRenderCount() {
+		return renderCount;
+	}
+
+	@Override
+	public boolean isRendering() {
+		return rendering;
+	}
+
+	@Override
+	public long getElapsedTime() {
+		return getElapsed() / 1000000;
+	}
+
+	@Override
+	public long getPixels() {
+		return sum().pixels - base.pixels;
+	}
+
+	@Override
+	public long getIterations() {
+		return sum().iterations - base.iterations;
+	}
+
+	@Override
+	public long getCardioidBulbPixels() {
+		return sum().inside - base.inside;
+	}
+
+	@Override
+	public double getPixelsPerSecond() {
+		final long elapsed = getElapsed();
+		return elapsed == 0 ? 0 : getPixels() * 1e9 / elapsed;
+	}
+
+	@Override
+	public double getIterationsPerSecond() {
+		final long elapsed = getElapsed();
+		return elapsed == 0 ? 0 : getIterations() * 1e9 / elapsed;
+	}
+
+	@Override
+	public long getComputeTime() {
+		return (sum().computeTime - base.computeTime) / 1000000;
+	}
+
+	@Override
+	public long getColourTime() {
+		return (sum().colourTime - base.colourTime) / 1000000;
+	}
+
+	@Override
+	public Map<String, Long> getThreadBusyTime() {
+		final Map<String, Long> busy = new TreeMap<String, Long>();
+
+		for (Map.Entry<Counters, Long> entry : getBusy().entrySet())
+			busy.put(entry.getKey().thread.getName(), entry.getValue() / 1000000);
+
+		return busy;
+	}
+
+	@Override
+	public Map<String, Long> getThreadIdleTime() {
+		final Map<String, Long> idle = new TreeMap<String, Long>();
+		final long elapsed = getElapsed();
+
+		for (Map.Entry<Counters, Long> entry : getBusy().entrySet()) {
+			idle.put(entry.getKey().thread.getName(),
+					Math.max(0, elapsed - entry.getValue()) / 1000000);
+		}
+
+		return idle;
+	}
+
+	@Override
+	public long getQueueDepth() {
+		final ForkJoinPool pool = this.pool;
+		return pool == null ? 0 : pool.getQueuedTaskCount()
+				+ pool.getQueuedSubmissionCount();
+	}
+
+	@Override
+	public int getActiveThreadCount() {
+		final ForkJoinPool pool = this.pool;
+		return pool == null ? 0 : pool.getActiveThreadCount();
+	}
+
+	@Override
+	public long getTotalPixels() {
+		return sum().pixels;
+	}
+
+	@Override
+	public long getTotalIterations() {
+		return sum().iterations;
+	}
+
+	// ==== Package Methods ====
+
+	/**
+	 * The counters of the calling thread
+	 */
+	Counters counters() {
+		return local.get();
+	}
+
+	void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	void startRender() {
+		// the threads that have gone will not count again, so only their
+		// totals are kept
+		for (Counters counters : all) {
+			if (counters.thread.isAlive())
+				continue;
+
+			all.remove(counters);
+			retired.pixels += counters.pixels;
+			retired.iterations += counters.iterations;
+			retired.inside += counters.inside;
+			retired.computeTime += counters.computeTime;
+			retired.colourTime += counters.colourTime;
+		}
+
+		// the counters start from where the last render left them
+		final Map<Counters, Long> busy = new HashMap<Counters, Long>();
+		for (Counters counters : all)
+			busy.put(counters, counters.computeTime + counters.colourTime);
+
+		base = sum();
+		baseBusy = busy;
+		renderStart = System.nanoTime();
+		rendering = true;
+		renderCount++;
+	}
+
+	void endRender() {
+		renderEnd = System.nanoTime();
+		rendering = false;
+	}
+
+	// ==== Private Helper Methods ====
+
+	private long getElapsed() {
+		if (renderStart == 0)
+			return 0;
+
+		return (rendering ? System.nanoTime() : renderEnd) - renderStart;
+	}
+
+	private Counters sum() {
+		final Counters total = new Counters(null);
+		total.pixels = retired.pixels;
+		total.iterations = retired.iterations;
+		total.inside = retired.inside;
+		total.computeTime = retired.computeTime;
+		total.colourTime = retired.colourTime;
+
+		for (Counters counters : all) {
+			total.pixels += counters.pixels;
+			total.iterations += counters.iterations;
+			total.inside += counters.inside;
+			total.computeTime += counters.computeTime;
+			total.colourTime += counters.colourTime;
+		}
+
+		return total;
+	}
+
+	private Map<Counters, Long> getBusy() {
+		// threads that have gone are left out
+		final Map<Counters, Long> busy = new HashMap<Counters, Long>();
+		final Map<Counters, Long> before = baseBusy;
+
+		for (Counters counters : all) {
+			if (!counters.thread.isAlive())
+				continue;
+
+			final Long base = before.get(counters);
+			busy.put(counters, counters.computeTime + counters.colourTime
+					- (base == null ? 0 : base));
+		}
+
+		return busy;
+	}
+
+	// ==== Counters ====
+
+	/**
+	 * What a single thread has done, only ever written by that thread
+	 * Times are in nanoseconds
+	 */
+	static final class Counters {
+		final Thread thread;
+		long pixels;
+		long iterations;
+		long inside;
+		long computeTime;
+		long colourTime;
+
+		private Counters(Thread thread) {
+			this.thread = thread;
+		}
+	}
+}
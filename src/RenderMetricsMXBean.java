@@ -0,0 +1,56 @@
+import java.util.Map;
+
+/**
+ * Live metrics of the renders of a Model, as seen through JMX
+ * Counts and times are for the current render, or the last one once it has
+ * finished, times are in milliseconds
+ */
+public interface RenderMetricsMXBean {
+
+	public long getRenderCount();
+
+	public boolean isRendering();
+
+	public long getElapsedTime();
+
+	/**
+	 * Pixels iterated or found inside the cardioid and bulb
+	 */
+	public long getPixels();
+
+	public long getIterations();
+
+	/**
+	 * Pixels the cardioid and bulb check decided without iterating
+	 */
+	public long getCardioidBulbPixels();
+
+	public double getPixelsPerSecond();
+
+	public double getIterationsPerSecond();
+
+	/**
+	 * Time spent iterating, summed over every thread
+	 */
+	public long getComputeTime();
+
+	/**
+	 * Time spent colouring and writing tiles, summed over every thread
+	 */
+	public long getColourTime();
+
+	public Map<String, Long> getThreadBusyTime();
+
+	public Map<String, Long> getThreadIdleTime();
+
+	/**
+	 * Tasks waiting in the pool's queues
+	 */
+	public long getQueueDepth();
+
+	public int getActiveThreadCount();
+
+	public long getTotalPixels();
+
+	public long getTotalIterations();
+}
@@ -0,0 +1,259 @@
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A bounded cache of computed tiles with least recently used eviction
+ * Tiles are keyed by everything that decides their iteration values and by
+ * their position on a grid fixed to the plane, so a region is found again
+ * after panning away from it or zooming back to it
+ */
+public class TileCache {
+
+	// ==== Properties ====
+
+	// iterated in access order, so the eldest entry is the least recently used
+	private final LinkedHashMap<Key, double[]> tiles = new LinkedHashMap<Key, double[]>(
+			16, 0.75f, true);
+
+	// memory budget and use, in bytes of iteration data
+	private long capacity;
+	private long size;
+
+	private long hits;
+	private long misses;
+
+	// ==== Constructor ====
+
+	/**
+	 * Creates an empty cache
+	 *
+	 * @param capacity is the memory budget in bytes
+	 */
+	public TileCache(long capacity) {
+		setCapacity(capacity);
+	}
+
+	// ==== Accessors ====
+
+	public synchronized final long getCapacity() {
+		return capacity;
+	}
+
+	public synchronized final void setCapacity(long capacity) {
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity " + capacity
+					+ " is negative");
+
+		this.capacity = capacity;
+		evict();
+	}
+
+	public synchronized final long getSize() {
+		return size;
+	}
+
+	public synchronized final long getHits() {
+		return hits;
+	}
+
+	public synchronized final long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Fraction of lookups that found their tile, 0 before the first lookup
+	 */
+	public synchronized final double getHitRate() {
+		final long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	// ==== Public Methods ====
+
+	/**
+	 * Looks a tile up, marking it as the most recently used
+	 *
+	 * @param key identifies the tile
+	 * @return the iteration values of the tile, or null if not cached
+	 */
+	public synchronized double[] get(Key key) {
+		final double[] values = tiles.get(key);
+
+		if (values == null)
+			misses++;
+		else
+			hits++;
+
+		return values;
+	}
+
+	/**
+	 * Adds a tile, evicting the least recently used tiles beyond the budget
+	 *
+	 * @param key identifies the tile
+	 * @param values are the iteration values, which must not change after
+	 */
+	public synchronized void put(Key key, double[] values) {
+		final double[] old = tiles.put(key, values);
+
+		if (old != null)
+			size -= bytes(old);
+		size += bytes(values);
+
+		evict();
+	}
+
+	public synchronized void clear() {
+		tiles.clear();
+		size = 0;
+		hits = 0;
+		misses = 0;
+	}
+
+	// ==== Private Helper Methods ====
+
+	private void evict() {
+		final Iterator<double[]> i = tiles.values().iterator();
+
+		while (size > capacity && i.hasNext()) {
+			size -= bytes(i.next());
+			i.remove();
+		}
+	}
+
+	private static long bytes(double[] values) {
+		return 8L * values.length;
+	}
+
+	// ==== Key ====
+
+	/**
+	 * Identifies a tile by how it was computed and where it lies
+	 */
+	public static final class Key {
+		private final int algorithm;
+		private final int precision;
+		private final boolean perturbation;
+		private final boolean subdivided;
+		private final int maxIteration;
+		private final double maxRadius;
+		private final double scale;
+		private final BigInteger column;
+		private final BigInteger row;
+
+		/**
+		 * @param precision is the tier the tile was iterated in, never
+		 * automatic, as the same settings pick different tiers at different
+		 * magnitudes
+		 * @param perturbation tells whether it was iterated relative to a
+		 * reference orbit
+		 * @param subdivided tells whether its interior may have been filled
+		 * from its border rather than iterated
+		 * @param column is the tile's column on the grid of the plane
+		 * @param row is the tile's row on the grid of the plane, counting
+		 * downwards
+		 */
+		public Key(int algorithm, int precision, boolean perturbation,
+				boolean subdivided, int maxIteration, double maxRadius,
+				double scale, BigInteger column, BigInteger row) {
+			this.algorithm = algorithm;
+			this.precision = precision;
+			this.perturbation = perturbation;
+			this.subdivided = subdivided;
+			this.maxIteration = maxIteration;
+			this.maxRadius = maxRadius;
+			this.scale = scale;
+			this.column = column;
+			this.row = row;
+		}
+
+		/**
+		 * Number of bytes write() takes
+		 */
+		public int getBytes() {
+			return 44 + column.bitLength() / 8 + 1 + row.bitLength() / 8 + 1;
+		}
+
+		/**
+		 * Writes the key to a buffer, to be read back by read()
+		 */
+		public void write(ByteBuffer buffer) {
+			final byte[] c = column.toByteArray(), r = row.toByteArray();
+
+			buffer.putInt(algorithm);
+			buffer.putInt(precision);
+			buffer.putInt(perturbation ? 1 : 0);
+			buffer.putInt(subdivided ? 1 : 0);
+			buffer.putInt(maxIteration);
+			buffer.putDouble(maxRadius);
+			buffer.putDouble(scale);
+			buffer.putInt(c.length);
+			buffer.put(c);
+			buffer.putInt(r.length);
+			buffer.put(r);
+		}
+
+		/**
+		 * Reads a key written by write()
+		 */
+		public static Key read(ByteBuffer buffer) {
+			final int algorithm = buffer.getInt();
+			final int precision = buffer.getInt();
+			final boolean perturbation = buffer.getInt() != 0;
+			final boolean subdivided = buffer.getInt() != 0;
+			final int maxIteration = buffer.getInt();
+			final double maxRadius = buffer.getDouble();
+			final double scale = buffer.getDouble();
+			final byte[] c = bytes(buffer);
+			final byte[] r = bytes(buffer);
+
+			return new Key(algorithm, precision, perturbation, subdivided,
+					maxIteration, maxRadius, scale, new BigInteger(c),
+					new BigInteger(r));
+		}
+
+		private static byte[] bytes(ByteBuffer buffer) {
+			// a torn record can hold any length
+			final int length = buffer.getInt();
+			if (length < 0 || length > buffer.remaining())
+				throw new BufferUnderflowException();
+
+			final byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			return bytes;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+
+			final Key k = (Key) o;
+			return algorithm == k.algorithm && precision == k.precision
+					&& perturbation == k.perturbation
+					&& subdivided == k.subdivided
+					&& maxIteration == k.maxIteration
+					&& Double.compare(maxRadius, k.maxRadius) == 0
+					&& Double.compare(scale, k.scale) == 0
+					&& column.equals(k.column) && row.equals(k.row);
+		}
+
+		@Override
+		public int hashCode() {
+			int h = algorithm;
+			h = 31 * h + precision;
+			h = 31 * h + (perturbation ? 1 : 0);
+			h = 31 * h + (subdivided ? 1 : 0);
+			h = 31 * h + maxIteration;
+			long bits = Double.doubleToLongBits(maxRadius);
+			h = 31 * h + (int) (bits ^ (bits >>> 32));
+			bits = Double.doubleToLongBits(scale);
+			h = 31 * h + (int) (bits ^ (bits >>> 32));
+			h = 31 * h + column.hashCode();
+			return 31 * h + row.hashCode();
+		}
+	}
+}
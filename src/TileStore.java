@@ -0,0 +1,540 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A bounded store of computed tiles on disk that outlives the program
+ * Tiles are appended as records to a single file, which is memory mapped in
+ * fixed size segments, so reading a tile is a view onto the page cache
+ * An index of the records is rebuilt from the file when it is opened, the
+ * least recently used tiles are dropped beyond the size cap and the file is
+ * compacted to reclaim their space
+ * Compaction copies the records on a thread of its own without holding the
+ * store, so rendering threads adding and looking tiles up do not wait on
+ * it, and tiles added meanwhile go past the cap, up to twice it, until it
+ * is done
+ */
+public class TileStore implements Closeable {
+
+	// ==== Constants ====
+
+	private static final String FILE_NAME = "tiles.dat";
+	private static final String COMPACT_NAME = "tiles.tmp";
+
+	// records never cross a segment, a shorter one is padded out
+	private static final int SEGMENT_SIZE = 16 << 20;
+
+	// marks a complete record, it is written after the rest of the record
+	// and changes with the layout of the key, so records of an older layout
+	// end the scan of a file
+	private static final int MAGIC = 0x54494c47;
+
+	// a compaction copies the records added while it copied again, until
+	// this few are left or it has gone round this often, and copies the
+	// rest holding the store
+	private static final int LATE_RECORDS = 64;
+	private static final int COPY_ROUNDS = 8;
+
+	// every record and its values start on a multiple of a double
+	private static final int ALIGNMENT = 8;
+
+	// the file is portable, and little endian matches the usual platforms
+	private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	// ==== Properties ====
+
+	private final File file;
+	private RandomAccessFile data;
+	private List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+
+	// iterated in access order, so the eldest entry is the least recently used
+	private final LinkedHashMap<TileCache.Key, Entry> index = new LinkedHashMap<TileCache.Key, Entry>(
+			16, 0.75f, true);
+
+	// where the next record goes, and the bytes of records still indexed
+	private long end;
+	private long live;
+
+	// size cap of the file in bytes
+	private long capacity;
+
+	// set while a compaction copies the records
+	private boolean compacting;
+
+	private long hits;
+	private long misses;
+
+	// ==== Constructor ====
+
+	/**
+	 * Opens the store in a directory, creating it if it does not exist
+	 *
+	 * @param directory holds the file of the store
+	 * @param capacity is the size cap in bytes, at least one segment is
+	 * always kept
+	 * @throws IOException if the file cannot be opened or mapped
+	 */
+	public TileStore(File directory, long capacity) throws IOException {
+		setCapacity(capacity);
+
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("cannot create " + directory);
+
+		file = new File(directory, FILE_NAME);
+		data = new RandomAccessFile(file, "rw");
+
+		// map what is there and index its records
+		final long length = data.length();
+		for (long position = 0; position < length; position += SEGMENT_SIZE)
+			map(data, segments);
+
+		scan();
+	}
+
+	// ==== Accessors ====
+
+	public synchronized final long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the size cap, which is applied when the next tile is added
+	 */
+	public synchronized final void setCapacity(long capacity) {
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity " + capacity
+					+ " is negative");
+
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Bytes taken up by the tiles still in the store
+	 */
+	public synchronized final long getSize() {
+		return live;
+	}
+
+	public synchronized final int getTileCount() {
+		return index.size();
+	}
+
+	public synchronized final long getHits() {
+		return hits;
+	}
+
+	public synchronized final long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Fraction of lookups that found their tile, 0 before the first lookup
+	 */
+	public synchronized final double getHitRate() {
+		final long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	// ==== Public Methods ====
+
+	/**
+	 * Looks a tile up, marking it as the most recently used
+	 *
+	 * @param key identifies the tile
+	 * @return a read only view of the iteration values in the mapped file,
+	 * or null if not stored, the view stays valid after the tile is dropped
+	 */
+	public synchronized DoubleBuffer get(TileCache.Key key) {
+		final Entry entry = index.get(key);
+
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+
+		hits++;
+
+		final ByteBuffer buffer = record(entry);
+		buffer.position(entry.values);
+		buffer.limit(entry.values + 8 * entry.count);
+
+		return buffer.slice().order(ORDER).asDoubleBuffer().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Adds a tile, dropping the least recently used tiles beyond the size cap
+	 * and compacting the file in the background
+	 *
+	 * @param key identifies the tile
+	 * @param values are the iteration values
+	 * @throws IOException if the file cannot grow
+	 */
+	public synchronized void put(TileCache.Key key, double[] values)
+			throws IOException {
+		// lay the record out, its marker is set by append()
+		final int head = align(12 + key.getBytes());
+		final int length = head + 8 * values.length;
+
+		if (length > SEGMENT_SIZE)
+			throw new IllegalArgumentException("tile of " + values.length
+					+ " values does not fit a segment");
+
+		// when tiles come faster than a compaction copies them it is
+		// waited for, rather than the file growing without end
+		if (compacting && segment(next(end, length)) >= 2 * getBudget() / SEGMENT_SIZE)
+			awaitCompaction();
+
+		final ByteBuffer record = ByteBuffer.allocate(length).order(ORDER);
+		record.position(8);
+		record.putInt(values.length);
+		key.write(record);
+		record.position(head);
+		record.asDoubleBuffer().put(values);
+		record.putInt(4, length);
+		record.position(0);
+
+		final Entry old = index.remove(key);
+		if (old != null)
+			live -= old.length;
+
+		if (compacting || !fits(length)) {
+			// drop the least recently used down to half the cap, so the
+			// file is not rewritten again straight away, and so a
+			// compaction under way has no more than that to copy
+			final Iterator<Entry> i = index.values().iterator();
+			while (live + length > getBudget() / 2 && i.hasNext()) {
+				live -= i.next().length;
+				i.remove();
+			}
+		}
+
+		if (!compacting && !fits(length)) {
+			final Compaction compaction = new Compaction();
+			final Thread thread = new Thread("TileStore compact") {
+				@Override
+				public void run() {
+					try {
+						compaction.run();
+					} catch (IOException e) {
+						// the file stays past its cap until the next one
+						e.printStackTrace();
+					}
+				}
+			};
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		index.put(key, new Entry(append(record), length, head, values.length));
+		live += length;
+	}
+
+	/**
+	 * Rewrites the file with only the tiles still in the store, waiting for
+	 * a compaction already under way first
+	 *
+	 * @throws IOException if the file cannot be rewritten
+	 */
+	public void compact() throws IOException {
+		final Compaction compaction;
+		synchronized (this) {
+			awaitCompaction();
+			compaction = new Compaction();
+		}
+
+		compaction.run();
+	}
+
+	/**
+	 * Writes the store through to disk
+	 */
+	public synchronized void force() {
+		for (MappedByteBuffer segment : segments)
+			segment.force();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		awaitCompaction();
+		force();
+		data.close();
+		index.clear();
+	}
+
+	// ==== Private Helper Methods ====
+
+	private long getBudget() {
+		return Math.max(capacity / SEGMENT_SIZE, 1) * SEGMENT_SIZE;
+	}
+
+	private boolean fits(int length) {
+		return segment(next(end, length)) < getBudget() / SEGMENT_SIZE;
+	}
+
+	private void awaitCompaction() throws IOException {
+		try {
+			while (compacting)
+				wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("compaction not waited for");
+		}
+	}
+
+	private long append(ByteBuffer record) throws IOException {
+		final int length = record.remaining();
+		final long position = append(data, segments, end, record);
+		end = position + length;
+		return position;
+	}
+
+	// writes a record after the end of a file, returning where it went
+	private static long append(RandomAccessFile data,
+			List<MappedByteBuffer> segments, long end, ByteBuffer record)
+			throws IOException {
+		final int length = record.remaining();
+		final long position = next(end, length);
+
+		while (segment(position) >= segments.size())
+			map(data, segments);
+
+		final ByteBuffer segment = segments.get(segment(position))
+				.duplicate().order(ORDER);
+		segment.position(offset(position));
+		segment.put(record);
+
+		// the marker goes last, so a record cut short is never indexed, and
+		// whatever follows is cleared so a scan stops after the record
+		segment.putInt(offset(position), MAGIC);
+		if (offset(position) + length + 4 <= SEGMENT_SIZE)
+			segment.putInt(offset(position) + length, 0);
+
+		return position;
+	}
+
+	private static void map(RandomAccessFile data,
+			List<MappedByteBuffer> segments) throws IOException {
+		final MappedByteBuffer segment = data.getChannel().map(
+				FileChannel.MapMode.READ_WRITE,
+				(long) segments.size() * SEGMENT_SIZE, SEGMENT_SIZE);
+		segment.order(ORDER);
+		segments.add(segment);
+	}
+
+	private void scan() {
+		for (int s = 0; s < segments.size(); s++) {
+			final ByteBuffer segment = segments.get(s).duplicate().order(ORDER);
+			int offset = 0;
+
+			// a record without its marker was not finished, and ends the
+			// segment
+			while (offset + 12 <= SEGMENT_SIZE
+					&& segment.getInt(offset) == MAGIC) {
+				final int length = segment.getInt(offset + 4);
+				if (length <= 0 || length > SEGMENT_SIZE - offset)
+					break;
+
+				segment.position(offset + 8);
+				segment.limit(offset + length);
+				final int count = segment.getInt();
+				final TileCache.Key key;
+				try {
+					key = TileCache.Key.read(segment);
+				} catch (RuntimeException e) {
+					// torn by a crash while it was written
+					break;
+				} finally {
+					segment.limit(SEGMENT_SIZE);
+				}
+
+				final int head = align(segment.position() - offset);
+				if (count < 0 || head + 8L * count > length)
+					break;
+
+				// a later record of the same tile replaces an earlier one
+				final Entry old = index.put(key, new Entry((long) s
+						* SEGMENT_SIZE + offset, length, head, count));
+				if (old != null)
+					live -= old.length;
+				live += length;
+
+				offset += length;
+			}
+
+			if (offset > 0 || s == 0)
+				end = (long) s * SEGMENT_SIZE + offset;
+		}
+	}
+
+	private ByteBuffer record(Entry entry) {
+		final ByteBuffer segment = segments.get(segment(entry.position)).duplicate();
+		segment.position(offset(entry.position));
+		segment.limit(offset(entry.position) + entry.length);
+
+		return segment.slice().order(ORDER);
+	}
+
+	private static long next(long position, int length) {
+		// move on to the next segment if the record does not fit this one
+		if (offset(position) + length > SEGMENT_SIZE)
+			return (segment(position) + 1L) * SEGMENT_SIZE;
+
+		return position;
+	}
+
+	private static int segment(long position) {
+		return (int) (position / SEGMENT_SIZE);
+	}
+
+	private static int offset(long position) {
+		return (int) (position % SEGMENT_SIZE);
+	}
+
+	private static int align(int length) {
+		return (length + ALIGNMENT - 1) & -ALIGNMENT;
+	}
+
+	// ==== Compaction ====
+
+	/**
+	 * Rewrites the file with the tiles in the store, copying them without
+	 * holding the store and then again those added meanwhile, until few
+	 * enough are left to copy while holding it at the end
+	 * Records are never changed once written and tiles are only added past
+	 * them, so they can be copied while the store goes on being used
+	 */
+	private final class Compaction {
+		private final File temporary = new File(file.getParentFile(),
+				COMPACT_NAME);
+		private final RandomAccessFile data;
+		private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+		private long end;
+
+		// where the records copied so far went
+		private final IdentityHashMap<Entry, Long> copied = new IdentityHashMap<Entry, Long>();
+
+		// only with the store held
+		private Compaction() throws IOException {
+			if (temporary.exists() && !temporary.delete())
+				throw new IOException("cannot delete " + temporary);
+
+			data = new RandomAccessFile(temporary, "rw");
+			compacting = true;
+		}
+
+		private void run() throws IOException {
+			boolean done = false;
+
+			try {
+				for (int round = 1;; round++) {
+					final Entry[] entries;
+					final long[] positions;
+					final ByteBuffer[] old;
+
+					synchronized (TileStore.this) {
+						final List<Entry> left = new ArrayList<Entry>();
+						for (Entry entry : index.values()) {
+							if (!copied.containsKey(entry))
+								left.add(entry);
+						}
+
+						if (left.size() <= LATE_RECORDS || round > COPY_ROUNDS) {
+							finish();
+							done = true;
+							return;
+						}
+
+						// in the order they were used
+						entries = left.toArray(new Entry[left.size()]);
+						positions = new long[entries.length];
+						for (int i = 0; i < entries.length; i++)
+							positions[i] = entries[i].position;
+						old = TileStore.this.segments.toArray(new ByteBuffer[0]);
+					}
+
+					for (int i = 0; i < entries.length; i++) {
+						final ByteBuffer record = old[segment(positions[i])].duplicate();
+						record.position(offset(positions[i]));
+						record.limit(offset(positions[i]) + entries[i].length);
+
+						copied.put(entries[i], append(record));
+					}
+				}
+			} finally {
+				synchronized (TileStore.this) {
+					if (!done) {
+						data.close();
+						temporary.delete();
+					}
+
+					compacting = false;
+					TileStore.this.notifyAll();
+				}
+			}
+		}
+
+		// only with the store held
+		private void finish() throws IOException {
+			// entries stay where they are in the index, those not copied
+			// yet are copied now
+			final long[] positions = new long[index.size()];
+			int i = 0;
+			for (Entry entry : index.values()) {
+				final Long position = copied.get(entry);
+				positions[i++] = position != null ? position : append(record(entry));
+			}
+
+			Files.move(temporary.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+
+			// only moved once nothing can fail
+			i = 0;
+			for (Entry entry : index.values())
+				entry.position = positions[i++];
+
+			// views handed out before remain valid on the old mapping
+			TileStore.this.data.close();
+			TileStore.this.data = data;
+			TileStore.this.segments = segments;
+			TileStore.this.end = end;
+		}
+
+		private long append(ByteBuffer record) throws IOException {
+			final int length = record.remaining();
+			final long position = TileStore.append(data, segments, end, record);
+			end = position + length;
+			return position;
+		}
+	}
+
+	// ==== Entry ====
+
+	// where a record lies in the file and where its values start in it
+	private static final class Entry {
+		private long position;
+		private final int length;
+		private final int values;
+		private final int count;
+
+		private Entry(long position, int length, int values, int count) {
+			this.position = position;
+			this.length = length;
+			this.values = values;
+			this.count = count;
+		}
+	}
+}
@@ -2,6 +2,7 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
@@ -35,6 +36,7 @@ public class View extends JComponent implements Observer, ActionListener {
 	private String complex = "";
 	
 	private BufferedImage julia = new BufferedImage(200, 150, BufferedImage.TYPE_INT_RGB);
+	private Palette juliaColours = new Palette(Palette.PALETTE_HSB, 100);
 
 	// ==== Constructor ====
 
@@ -117,10 +119,7 @@ public class View extends JComponent implements Observer, ActionListener {
 								iteration ++;
 							}
 														
-							float hsvFloat = (float) ((double) iteration / 100);						
-							int HSVtoRGB = (iteration >= 100) ? Color.BLACK.getRGB() : Color.HSBtoRGB(hsvFloat, 1, 1 - hsvFloat);
-							
-							julia.setRGB(x, y, HSVtoRGB);
+							julia.setRGB(x, y, juliaColours.getColour(iteration));
 						}
 					}
 					
@@ -189,6 +188,7 @@ public class View extends JComponent implements Observer, ActionListener {
 	
 	@Override
 	protected void paintComponent(Graphics g) {
+		final long began = RenderEvents.begin();
 		super.paintComponent(g);
 		
 		// draw the image
@@ -203,6 +203,8 @@ public class View extends JComponent implements Observer, ActionListener {
 		g.drawRect(5, 5, julia.getWidth(), julia.getHeight());
 		g.drawString(complex, (w - g.getFontMetrics().stringWidth(complex)) / 2,
 				h - g.getFontMetrics().getHeight());
+
+		RenderEvents.end(RenderEvents.PAINT, began, (long) w * h);
 	}
 
 	// ==== Observer Implementation ====
@@ -210,7 +212,15 @@ public class View extends JComponent implements Observer, ActionListener {
 	@Override
 	public void update(Observable o, Object arg) {
 		if (o == model) {
-			repaint();
+			// follow the palette of the model in the preview
+			if (juliaColours.getPalette() != model.getPalette())
+				juliaColours = new Palette(model.getPalette(), 100);
+
+			// only repaint the region the model reports as changed
+			if (arg instanceof Rectangle)
+				repaint((Rectangle) arg);
+			else
+				repaint();
 		}
 	}
 	
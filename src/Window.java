@@ -1,5 +1,7 @@
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
@@ -7,14 +9,35 @@ import javax.swing.JScrollPane;
 
 @SuppressWarnings("serial")
 public class Window extends JFrame {
+
+	// size cap of the tile store on disk
+	private static final long TILE_STORE_SIZE = 1L << 30;
 	
 	public Window() {
+		this(null);
+	}
+
+	/**
+	 * @param tiles is the directory tiles are kept in between runs, null to
+	 * keep them in memory only
+	 */
+	public Window(File tiles) {
 		super();
 		
 		setTitle("Mandelbrot Set");
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		
         final Model model = new Model();
+        model.getMetrics().register("window");
+
+        if (tiles != null) {
+        	try {
+        		model.setTileStore(new TileStore(tiles, TILE_STORE_SIZE));
+        	} catch (IOException e) {
+        		// render without it
+        		e.printStackTrace();
+        	}
+        }
         
         final Controls controls = new Controls(model);
         final View view = new View(model);
@@ -0,0 +1,1027 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+
+/**
+ * Renders the frames of an exponential zoom from one view to another as a
+ * numbered sequence of PNG images
+ * Computing, colouring and encoding run as a pipeline, so one frame is
+ * encoded while the next are coloured and computed
+ * Every frames-per-octave frames the scale halves exactly, which puts every
+ * other pixel of every other row onto the grid of the frame an octave
+ * before, and those samples are taken from it instead of being iterated
+ * Frames too deep for doubles share one perturbation reference orbit at the
+ * point the zoom closes in on, when perturbation is asked for or
+ * double-doubles no longer resolve them either
+ * As an exponential map, a single log-polar strip around that point is
+ * computed instead, each row a ring and each column an angle, and every
+ * frame is resampled from it
+ */
+public class ZoomVideo {
+
+	// ==== Constants ====
+
+	// frames waiting between two stages
+	private static final int QUEUE_SIZE = 2;
+
+	// rows of a frame below which they are not split any further
+	private static final int ROWS_PER_TASK = 8;
+
+	// tells the colouring and encoding stages that there are no more frames
+	private static final Frame END = new Frame();
+
+	// ==== Properties ====
+
+	private final int width;
+	private final int height;
+	private final int frameCount;
+
+	// the views zoomed between, the coarse one being the larger
+	private final BigDecimal coarseX, coarseY, fineX, fineY;
+	private final double coarseScale, fineScale;
+
+	// frames are computed from coarse to fine, numbered backwards when
+	// zooming out
+	private final boolean zoomIn;
+
+	private int algorithm = Model.ALGORITHM_NORMALISED_ITERATION_COUNT;
+	private int palette = Palette.PALETTE_HSB;
+	private int maxIteration = 1000;
+	private double maxRadius = 10;
+	private boolean cardoidBulbCheck = true;
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+	private boolean exponentialMap = false;
+
+	// statistics of the last render, times in nanoseconds
+	private long wallTime;
+	private long computeTime, colourTime, encodeTime;
+	private long reused;
+
+	// ==== Constructor ====
+
+	/**
+	 * Sets up a zoom between two views, centred as Model.show() centres them
+	 *
+	 * @param width is the width of the frames in pixels
+	 * @param height is the height of the frames in pixels
+	 * @param frameCount is the number of frames, at least 2
+	 * @param startX is the real part of the centre of the first frame
+	 * @param startY is the imaginary part of the centre of the first frame
+	 * @param startScale is the distance between pixels of the first frame
+	 * @param endX is the real part of the centre of the last frame
+	 * @param endY is the imaginary part of the centre of the last frame
+	 * @param endScale is the distance between pixels of the last frame
+	 */
+	public ZoomVideo(int width, int height, int frameCount, BigDecimal startX,
+			BigDecimal startY, double startScale, BigDecimal endX,
+			BigDecimal endY, double endScale) {
+		if (width < 1 || height < 1)
+			throw new IllegalArgumentException("size " + width + "x" + height
+					+ " is empty");
+		if (frameCount < 2)
+			throw new IllegalArgumentException("frameCount " + frameCount
+					+ " is less than 2");
+		if (!(startScale > 0) || !(endScale > 0))
+			throw new IllegalArgumentException("scales must be positive");
+		if (startScale == endScale)
+			throw new IllegalArgumentException(
+					"the views must differ in scale to zoom between them");
+
+		this.width = width;
+		this.height = height;
+		this.frameCount = frameCount;
+
+		zoomIn = endScale < startScale;
+		coarseX = zoomIn ? startX : endX;
+		coarseY = zoomIn ? startY : endY;
+		coarseScale = Math.max(startScale, endScale);
+		fineX = zoomIn ? endX : startX;
+		fineY = zoomIn ? endY : startY;
+		fineScale = Math.min(startScale, endScale);
+	}
+
+	// ==== Accessors ====
+
+	public final int getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * Sets one of the Model.ALGORITHM_ constants, perturbation takes over
+	 * from double-doubles in frames doubles no longer resolve
+	 */
+	public final void setAlgorithm(int algorithm) {
+		if (algorithm < Model.ALGORITHM_ESCAPE_TIME
+				|| algorithm > Model.ALGORITHM_PERTURBATION)
+			throw new IllegalArgumentException("algorithm " + algorithm
+					+ " does not exist");
+
+		this.algorithm = algorithm;
+	}
+
+	public final int getPalette() {
+		return palette;
+	}
+
+	public final void setPalette(int palette) {
+		if (palette < 0 || palette >= Palette.PALETTE_COUNT)
+			throw new IllegalArgumentException("palette " + palette
+					+ " does not exist");
+
+		this.palette = palette;
+	}
+
+	public final int getMaxIteration() {
+		return maxIteration;
+	}
+
+	public final void setMaxIteration(int maxIteration) {
+		if (maxIteration < 0)
+			throw new IllegalArgumentException(
+					"maxIterations cannot be less than 0");
+
+		this.maxIteration = maxIteration;
+	}
+
+	public final double getMaxRadius() {
+		return maxRadius;
+	}
+
+	public final void setMaxRadius(double maxRadius) {
+		if (maxRadius < 0)
+			throw new IllegalArgumentException(
+					"maxRadius cannot be less than 0");
+
+		this.maxRadius = maxRadius;
+	}
+
+	public final boolean getCardoidBulbCheck() {
+		return cardoidBulbCheck;
+	}
+
+	public final void setCardoidBulbCheck(boolean cardoidBulbCheck) {
+		this.cardoidBulbCheck = cardoidBulbCheck;
+	}
+
+	public final int getThreadCount() {
+		return threadCount;
+	}
+
+	public final void setThreadCount(int threadCount) {
+		if (threadCount < 1)
+			throw new IllegalArgumentException(
+					"threadCount cannot be less than 1");
+
+		this.threadCount = threadCount;
+	}
+
+	public final boolean getExponentialMap() {
+		return exponentialMap;
+	}
+
+	/**
+	 * Sets whether frames are resampled from one log-polar strip rather than
+	 * computed, which is far quicker for long zooms but interpolates pixels
+	 */
+	public final void setExponentialMap(boolean exponentialMap) {
+		this.exponentialMap = exponentialMap;
+	}
+
+	/**
+	 * Number of frames over which the scale halves, rounded to a whole
+	 * number, so the zoom ends exactly on the fine view but the coarse
+	 * view's scale is only met closely when there are many frames per octave
+	 */
+	public final int getFramesPerOctave() {
+		final double octaves = Math.log(coarseScale / fineScale) / Math.log(2);
+		return (int) Math.max(1, Math.round((frameCount - 1) / octaves));
+	}
+
+	/**
+	 * Frames per second of the last render
+	 */
+	public final double getFrameRate() {
+		return wallTime == 0 ? 0 : frameCount * 1e9 / wallTime;
+	}
+
+	/**
+	 * Fractions of the last render that computing, colouring and encoding
+	 * were each busy, as an exponential map computing is the strip and
+	 * colouring the resampling of frames from it
+	 */
+	public final double[] getUtilisation() {
+		if (wallTime == 0)
+			return new double[3];
+
+		return new double[] { (double) computeTime / wallTime,
+				(double) colourTime / wallTime, (double) encodeTime / wallTime };
+	}
+
+	/**
+	 * Fraction of the pixels of the last render taken from an earlier frame
+	 */
+	public final double getReuse() {
+		return wallTime == 0 ? 0 : reused / ((double) width * height * frameCount);
+	}
+
+	// ==== Public Methods ====
+
+	/**
+	 * Renders every frame into a directory as frame00000.png onwards
+	 *
+	 * @param directory receives the frames, and is created if needed
+	 * @throws IOException if a frame cannot be written
+	 */
+	public void render(final File directory) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("cannot create " + directory);
+
+		final Frame[] frames = plan();
+		final int k = getFramesPerOctave();
+
+		final Palette colours = new Palette(palette, maxIteration);
+		final BlockingQueue<Frame> computedFrames = new ArrayBlockingQueue<Frame>(
+				QUEUE_SIZE);
+		final BlockingQueue<Frame> colouredFrames = new ArrayBlockingQueue<Frame>(
+				QUEUE_SIZE);
+		// the first failure of the colouring or encoding stage, shared by
+		// every stage
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		computeTime = colourTime = encodeTime = 0;
+		reused = 0;
+		final long start = System.nanoTime();
+
+		final Thread colourer = new Thread("ZoomVideo colour") {
+			@Override
+			public void run() {
+				try {
+					for (Frame frame; (frame = computedFrames.take()) != END;) {
+						final long t = System.nanoTime();
+
+						// frames after a failed one are still passed on, so
+						// the stages either side never block
+						if (failure.get() == null) {
+							try {
+								frame.rgb = new int[frame.values.length];
+								for (int i = 0; i < frame.rgb.length; i++)
+									frame.rgb[i] = colours.getColour(frame.values[i]);
+							} catch (Throwable e) {
+								failure.compareAndSet(null, e);
+							}
+						}
+						frame.values = null;
+
+						colourTime += System.nanoTime() - t;
+						colouredFrames.put(frame);
+					}
+
+					colouredFrames.put(END);
+				} catch (InterruptedException e) {
+				}
+			}
+		};
+
+		final Thread encoder = new Thread("ZoomVideo encode") {
+			@Override
+			public void run() {
+				try {
+					for (Frame frame; (frame = colouredFrames.take()) != END;) {
+						final long t = System.nanoTime();
+
+						// frames after a failed one are still taken, so the
+						// stages before never block
+						if (failure.get() == null) {
+							try {
+								write(frame, directory);
+							} catch (Throwable e) {
+								failure.compareAndSet(null, e);
+							}
+						}
+						frame.rgb = null;
+
+						encodeTime += System.nanoTime() - t;
+					}
+				} catch (InterruptedException e) {
+				}
+			}
+		};
+
+		colourer.start();
+		encoder.start();
+
+		final ForkJoinPool pool = new ForkJoinPool(threadCount);
+
+		try {
+			// the samples each of the next k frames takes from an earlier one
+			final Crop[] crops = new Crop[k];
+			PerturbationAlgorithm reference = null;
+
+			if (exponentialMap) {
+				long t = System.nanoTime();
+				final Strip strip = new Strip(frames[0], frames[frames.length - 1]);
+				pool.invoke(new Rings(strip, colours, 0, strip.rows));
+				computeTime += System.nanoTime() - t;
+
+				// the frames skip the colouring stage, they are resampled
+				// from colours
+				for (int j = 0; j < frames.length && failure.get() == null; j++) {
+					t = System.nanoTime();
+					final Frame frame = frames[j];
+
+					frame.rgb = new int[width * height];
+					pool.invoke(new Resample(strip, frame, 0, height));
+
+					colourTime += System.nanoTime() - t;
+					colouredFrames.put(frame);
+				}
+			}
+
+			for (int j = 0; j < frames.length && !exponentialMap
+					&& failure.get() == null; j++) {
+				final long t = System.nanoTime();
+				final Frame frame = frames[j];
+
+				if (frame.perturbation && reference == null) {
+					// one reference orbit serves every deep frame, it is only
+					// taken as periodic within the finest frame's tolerance
+					reference = new PerturbationAlgorithm(frame.pointX,
+							frame.pointY, maxRadius, maxIteration,
+							Model.getDigits(fineScale), fineScale
+									* Model.PERIODICITY_EPSILON);
+				}
+
+				frame.values = new double[width * height];
+				reused += pool.invoke(new Rows(frame, j >= k ? crops[j % k]
+						: null, reference, 0, height));
+
+				// keep what the frame an octave on finds on its grid
+				crops[j % k] = j + k < frames.length ? new Crop(frame,
+						frames[j + k], width, height) : null;
+
+				computeTime += System.nanoTime() - t;
+				computedFrames.put(frame);
+			}
+
+			computedFrames.put(END);
+			colourer.join();
+			encoder.join();
+		} catch (InterruptedException e) {
+			throw new IOException("render interrupted", e);
+		} finally {
+			// the stages are done unless computing failed or was interrupted
+			colourer.interrupt();
+			encoder.interrupt();
+			pool.shutdownNow();
+			wallTime = System.nanoTime() - start;
+		}
+
+		final Throwable failed = failure.get();
+		if (failed instanceof IOException)
+			throw (IOException) failed;
+		if (failed instanceof RuntimeException)
+			throw (RuntimeException) failed;
+		if (failed instanceof Error)
+			throw (Error) failed;
+	}
+
+	// ==== Main ====
+
+	/**
+	 * Renders a zoom from the command line
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		final String usage = "usage: java ZoomVideo [options] directory\n"
+				+ "  -x -y -s           centre and scale of the first frame (default fits the set)\n"
+				+ "  -X -Y -S           centre and scale of the last frame, -S is required\n"
+				+ "  -n <frames>        number of frames (default 300)\n"
+				+ "  -w -h              size in pixels (default 1280x720)\n"
+				+ "  -i <iterations>    maximum number of iterations (default 1000)\n"
+				+ "  -r <radius>        escape radius (default 10)\n"
+				+ "  -t <threads>       number of threads (default all cores)\n"
+				+ "  -m <mode>          grid computes every frame, map resamples them\n"
+				+ "                     from an exponential map (default grid)";
+
+		BigDecimal x0 = BigDecimal.valueOf(-0.75), y0 = BigDecimal.ZERO;
+		BigDecimal x1 = null, y1 = null;
+		double s0 = 0, s1 = 0;
+		int frames = 300, width = 1280, height = 720;
+		int maxIteration = 1000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		double maxRadius = 10;
+		boolean map = false;
+		File directory = null;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				final String arg = args[i];
+
+				if (!arg.startsWith("-") || arg.length() != 2) {
+					if (directory != null)
+						throw new IllegalArgumentException("unexpected " + arg);
+
+					directory = new File(arg);
+					continue;
+				}
+
+				if (i + 1 == args.length)
+					throw new IllegalArgumentException(arg + " needs a value");
+
+				final String value = args[++i];
+
+				try {
+					switch (arg.charAt(1)) {
+					case 'x':
+						x0 = new BigDecimal(value);
+						break;
+					case 'y':
+						y0 = new BigDecimal(value);
+						break;
+					case 's':
+						s0 = Double.parseDouble(value);
+						break;
+					case 'X':
+						x1 = new BigDecimal(value);
+						break;
+					case 'Y':
+						y1 = new BigDecimal(value);
+						break;
+					case 'S':
+						s1 = Double.parseDouble(value);
+						break;
+					case 'n':
+						frames = Integer.parseInt(value);
+						break;
+					case 'w':
+						width = Integer.parseInt(value);
+						break;
+					case 'h':
+						height = Integer.parseInt(value);
+						break;
+					case 'i':
+						maxIteration = Integer.parseInt(value);
+						break;
+					case 'r':
+						maxRadius = Double.parseDouble(value);
+						break;
+					case 't':
+						threads = Integer.parseInt(value);
+						break;
+					case 'm':
+						if (!value.equals("grid") && !value.equals("map"))
+							throw new IllegalArgumentException("unknown mode "
+									+ value);
+
+						map = value.equals("map");
+						break;
+					default:
+						throw new IllegalArgumentException("unknown option "
+								+ arg);
+					}
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException(arg + " is not a number: "
+							+ value);
+				}
+			}
+
+			if (directory == null)
+				throw new IllegalArgumentException("no output directory");
+			if (s1 == 0)
+				throw new IllegalArgumentException("no scale for the last frame");
+			if (width < 1 || height < 1)
+				throw new IllegalArgumentException("size " + width + "x"
+						+ height + " is empty");
+
+			// start from the whole set, and end on the same centre by default
+			if (s0 == 0)
+				s0 = Math.max(3.5 / width, 2.5 / height);
+
+			final ZoomVideo video = new ZoomVideo(width, height, frames, x0,
+					y0, s0, x1 == null ? x0 : x1, y1 == null ? y0 : y1, s1);
+			video.setMaxIteration(maxIteration);
+			video.setMaxRadius(maxRadius);
+			video.setThreadCount(threads);
+			video.setExponentialMap(map);
+			video.render(directory);
+
+			final double[] busy = video.getUtilisation();
+			System.out.printf("rendered %d frames at %.2f frames/s, "
+					+ "%.0f%% of pixels reused%n"
+					+ "busy: compute %.0f%%, colour %.0f%%, encode %.0f%%%n",
+					frames, video.getFrameRate(), 100 * video.getReuse(),
+					100 * busy[0], 100 * busy[1], 100 * busy[2]);
+			System.exit(0);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(usage);
+			System.exit(2);
+		} catch (IOException e) {
+			System.err.println("cannot render " + directory + ": "
+					+ e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	// ==== Private Helper Methods ====
+
+	private Frame[] plan() {
+		final int k = getFramesPerOctave();
+		final double[] scales = new double[frameCount];
+
+		for (int j = 0; j < frameCount; j++) {
+			// the fine scale is met exactly, and k frames on from any frame
+			// the scale is exactly half of it
+			final int steps = frameCount - 1 - j;
+			scales[j] = Math.scalb(
+					fineScale * Math.pow(2, (double) (steps % k) / k), steps / k);
+		}
+
+		// the point that stays put on screen while zooming about it, found
+		// from fine = point + (coarse - point) * ratio
+		final MathContext mc = new MathContext(Model.getDigits(fineScale));
+		final BigDecimal first = new BigDecimal(scales[0]);
+		final BigDecimal ratio = new BigDecimal(fineScale).divide(first, mc);
+		final BigDecimal rest = BigDecimal.ONE.subtract(ratio, mc);
+		final BigDecimal pointX = fineX.subtract(coarseX.multiply(ratio, mc),
+				mc).divide(rest, mc);
+		final BigDecimal pointY = fineY.subtract(coarseY.multiply(ratio, mc),
+				mc).divide(rest, mc);
+
+		final Frame[] frames = new Frame[frameCount];
+
+		for (int j = 0; j < frameCount; j++) {
+			final Frame frame = new Frame();
+			final double scale = scales[j];
+			final BigDecimal unit = new BigDecimal(scale);
+
+			// close in on the point in proportion to the scale
+			final BigDecimal f = unit.divide(first, mc);
+			final BigDecimal x = pointX.add(
+					coarseX.subtract(pointX, mc).multiply(f, mc), mc);
+			final BigDecimal y = pointY.add(
+					coarseY.subtract(pointY, mc).multiply(f, mc), mc);
+
+			frame.number = zoomIn ? j : frameCount - 1 - j;
+			frame.scale = scale;
+			frame.pointX = pointX;
+			frame.pointY = pointY;
+
+			// the corner on the pixel grid of the plane, as Model places it
+			frame.column = Model.snapColumn(x, scale, width);
+			frame.row = Model.snapRow(y, scale, height);
+			frame.cornerX = new BigDecimal(frame.column).multiply(unit);
+			frame.cornerY = new BigDecimal(frame.row.negate()).multiply(unit);
+
+			// the point in pixels from the corner, for offsets from it
+			frame.pointColumn = new BigDecimal(frame.column).subtract(
+					pointX.divide(unit, mc)).doubleValue();
+			frame.pointRow = new BigDecimal(frame.row).add(
+					pointY.divide(unit, mc)).doubleValue();
+
+			// doubles while they resolve the frame, double-doubles beyond,
+			// and a reference orbit once those do not either or when asked
+			// for
+			final double magnitude = Model.getMagnitude(
+					frame.cornerX.doubleValue(), frame.cornerY.doubleValue(),
+					width, height, scale);
+			frame.tier = Model.selectPrecision(Model.PRECISION_AUTO, scale,
+					magnitude);
+
+			if (algorithm == Model.ALGORITHM_BURNING_SHIP_FRACTAL)
+				frame.tier = Model.PRECISION_DOUBLE;
+			else if (frame.tier != Model.PRECISION_DOUBLE)
+				frame.perturbation = Model.selectPerturbation(algorithm,
+						true, scale, magnitude);
+
+			frames[j] = frame;
+		}
+
+		return frames;
+	}
+
+	private void write(Frame frame, File directory) throws IOException {
+		final PngWriter png = new PngWriter(new BufferedOutputStream(
+				new FileOutputStream(new File(directory, String.format(
+						"frame%05d.png", frame.number))), 1 << 16), width,
+				height, Deflater.BEST_SPEED);
+		png.write(frame.rgb, height);
+		png.close();
+	}
+
+	// ==== Frame ====
+
+	// a frame as it passes through the stages
+	private static final class Frame {
+		private int number;
+		private double scale;
+
+		// the corner as a column and a row of the pixel grid of the plane,
+		// rows counting downwards, and as a point
+		private BigInteger column, row;
+		private BigDecimal cornerX, cornerY;
+
+		// the point zoomed in on, and where it is in pixels from the corner
+		private BigDecimal pointX, pointY;
+		private double pointColumn, pointRow;
+
+		// how the frame is iterated
+		private int tier;
+		private boolean perturbation;
+
+		// iteration values once computed, then colours once coloured
+		private double[] values;
+		private int[] rgb;
+	}
+
+	// ==== Crop ====
+
+	// the samples of a frame that fall on the grid of the frame an octave on,
+	// at every other pixel from a corner of the later frame
+	private static final class Crop {
+		private int x, y;
+		private int columns, rows;
+		private double[] values;
+
+		private Crop(Frame source, Frame target, int width, int height) {
+			// target pixels on even columns and rows lie on the source grid
+			x = target.column.testBit(0) ? 1 : 0;
+			y = target.row.testBit(0) ? 1 : 0;
+
+			final long sourceX = offset(target.column.add(BigInteger.valueOf(x))
+					.shiftRight(1).subtract(source.column));
+			final long sourceY = offset(target.row.add(BigInteger.valueOf(y))
+					.shiftRight(1).subtract(source.row));
+
+			// only the samples on both frames are kept
+			final long i0 = Math.max(0, -sourceX);
+			final long j0 = Math.max(0, -sourceY);
+			final long i1 = Math.min(width - sourceX, (width - x + 1) / 2);
+			final long j1 = Math.min(height - sourceY, (height - y + 1) / 2);
+
+			columns = (int) Math.max(0, i1 - i0);
+			rows = (int) Math.max(0, j1 - j0);
+			x += 2 * i0;
+			y += 2 * j0;
+			values = new double[columns * rows];
+
+			for (int j = 0; j < rows; j++)
+				System.arraycopy(source.values, (int) (sourceY + j0 + j)
+						* width + (int) (sourceX + i0), values, j * columns,
+						columns);
+		}
+
+		private static long offset(BigInteger offset) {
+			// frames that far apart share nothing
+			return offset.bitLength() < 32 ? offset.longValue()
+					: offset.signum() * (long) Integer.MAX_VALUE;
+		}
+	}
+
+	// ==== Strip ====
+
+	// an exponential map around the point zoomed in on, row i is the ring
+	// of radius outer * e^(-i * step) and column j is at angle j * step, so
+	// that samples are as far apart along a ring as across rings
+	private final class Strip {
+		private final int columns, rows;
+		private final double step;
+		private final double outer;
+		private final double pointX, pointY;
+		private final int[] rgb;
+		private PerturbationAlgorithm reference;
+
+		private Strip(Frame coarse, Frame fine) {
+			// a ring of samples as dense as the pixels at the corners
+			columns = (int) Math.ceil(Math.PI * Math.hypot(width, height));
+			step = 2 * Math.PI / columns;
+
+			// out to the furthest corner of the coarse frame, and in to
+			// within a pixel of the fine frame
+			double radius = 0;
+			for (int corner = 0; corner < 4; corner++) {
+				radius = Math.max(radius, Math.hypot(coarse.pointColumn
+						+ (corner & 1) * width, coarse.pointRow
+						+ (corner >> 1) * height));
+			}
+			outer = (radius + 2) * coarse.scale;
+
+			final double inner = fine.scale / 2;
+			final long count = (long) Math.ceil(Math.log(outer / inner) / step) + 2;
+
+			if (count * columns > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("exponential map of "
+						+ count + " rings of " + columns
+						+ " samples is too large");
+
+			rows = (int) count;
+			rgb = new int[rows * columns];
+			pointX = coarse.pointX.doubleValue();
+			pointY = coarse.pointY.doubleValue();
+
+			// rings doubles cannot resolve are iterated relative to the
+			// point, the innermost ring decides the precision and tolerance
+			final double spacing = inner * step;
+			if (!isResolved(rows - 1)
+					&& algorithm != Model.ALGORITHM_BURNING_SHIP_FRACTAL) {
+				reference = new PerturbationAlgorithm(coarse.pointX,
+						coarse.pointY, maxRadius, maxIteration,
+						Model.getDigits(spacing), spacing * Model.PERIODICITY_EPSILON);
+			}
+		}
+
+		private double getRadius(int ring) {
+			return outer * Math.exp(-ring * step);
+		}
+
+		private boolean isResolved(int ring) {
+			final double radius = getRadius(ring);
+			return Model.isResolved(radius * step, Math.ulp(Math.max(
+					Math.abs(pointX), Math.abs(pointY)) + radius));
+		}
+	}
+
+	// computes the colours of a run of rings of the strip
+	@SuppressWarnings("serial")
+	private final class Rings extends RecursiveAction {
+		private final Strip strip;
+		private final Palette colours;
+		private final int top, bottom;
+
+		public Rings(Strip strip, Palette colours, int top, int bottom) {
+			this.strip = strip;
+			this.colours = colours;
+			this.top = top;
+			this.bottom = bottom;
+		}
+
+		@Override
+		protected void compute() {
+			if (bottom - top > ROWS_PER_TASK) {
+				final int middle = (top + bottom) >>> 1;
+				invokeAll(new Rings(strip, colours, top, middle), new Rings(
+						strip, colours, middle, bottom));
+				return;
+			}
+
+			final boolean check = cardoidBulbCheck
+					&& algorithm != Model.ALGORITHM_BURNING_SHIP_FRACTAL;
+
+			for (int i = top; i < bottom; i++) {
+				final double radius = strip.getRadius(i);
+				final double epsilon = radius * strip.step
+						* Model.PERIODICITY_EPSILON;
+				final boolean perturbation = strip.reference != null
+						&& !strip.isResolved(i);
+
+				for (int j = 0; j < strip.columns; j++) {
+					final double dx = radius * Math.cos(j * strip.step);
+					final double dy = radius * Math.sin(j * strip.step);
+					final double cx = strip.pointX + dx;
+					final double cy = strip.pointY + dy;
+					final double value;
+
+					if (perturbation) {
+						value = algorithm == Model.ALGORITHM_ESCAPE_TIME ? strip.reference
+								.escapeTime(dx, dy) : strip.reference
+								.normalisedIterationCount(dx, dy);
+					} else if (check && Algorithm.isInside(cx, cy)) {
+						value = maxIteration;
+					} else if (algorithm == Model.ALGORITHM_ESCAPE_TIME) {
+						value = Algorithm.escapeTime(cx, cy, maxRadius,
+								maxIteration, epsilon);
+					} else if (algorithm == Model.ALGORITHM_BURNING_SHIP_FRACTAL) {
+						value = Algorithm.burningShipFractal(cx, cy, maxRadius,
+								maxIteration, epsilon);
+					} else {
+						value = Algorithm.normalisedIterationCount(cx, cy,
+								maxRadius, maxIteration, epsilon);
+					}
+
+					strip.rgb[i * strip.columns + j] = colours.getColour(value);
+				}
+			}
+		}
+	}
+
+	// resamples a run of rows of a frame from the strip
+	@SuppressWarnings("serial")
+	private final class Resample extends RecursiveAction {
+		private final Strip strip;
+		private final Frame frame;
+		private final int top, bottom;
+
+		public Resample(Strip strip, Frame frame, int top, int bottom) {
+			this.strip = strip;
+			this.frame = frame;
+			this.top = top;
+			this.bottom = bottom;
+		}
+
+		@Override
+		protected void compute() {
+			if (bottom - top > ROWS_PER_TASK) {
+				final int middle = (top + bottom) >>> 1;
+				invokeAll(new Resample(strip, frame, top, middle),
+						new Resample(strip, frame, middle, bottom));
+				return;
+			}
+
+			final int[] rgb = strip.rgb;
+			final int columns = strip.columns;
+
+			for (int y = top; y < bottom; y++) {
+				// offsets of the pixels from the point
+				final double dy = -(frame.pointRow + y) * frame.scale;
+
+				for (int x = 0; x < width; x++) {
+					final double dx = (frame.pointColumn + x) * frame.scale;
+
+					// the ring and angle of the pixel in samples, the middle
+					// is as deep as the innermost ring
+					final double u = Math.max(0, Math.min(
+							Math.log(strip.outer / Math.hypot(dx, dy))
+									/ strip.step, strip.rows - 1));
+					double v = Math.atan2(dy, dx) / strip.step;
+					if (v < 0)
+						v += columns;
+
+					final int i0 = (int) u;
+					final int i1 = Math.min(i0 + 1, strip.rows - 1);
+					final int j0 = (int) v % columns;
+					final int j1 = (j0 + 1) % columns;
+					final double fu = u - i0, fv = v - (int) v;
+
+					// blend the four samples around it channel by channel
+					final int a = rgb[i0 * columns + j0];
+					final int b = rgb[i0 * columns + j1];
+					final int c = rgb[i1 * columns + j0];
+					final int d = rgb[i1 * columns + j1];
+					int colour = 0;
+					for (int shift = 0; shift < 24; shift += 8) {
+						final double outside = (1 - fv) * (a >> shift & 0xff)
+								+ fv * (b >> shift & 0xff);
+						final double inside = (1 - fv) * (c >> shift & 0xff)
+								+ fv * (d >> shift & 0xff);
+						colour |= (int) ((1 - fu) * outside + fu * inside + 0.5) << shift;
+					}
+
+					frame.rgb[y * width + x] = colour;
+				}
+			}
+		}
+	}
+
+	// ==== Rows ====
+
+	// computes a run of rows of a frame, returning how many pixels were
+	// taken from the crop
+	@SuppressWarnings("serial")
+	private final class Rows extends RecursiveTask<Long> {
+		private final Frame frame;
+		private final Crop crop;
+		private final PerturbationAlgorithm reference;
+		private final int top, bottom;
+
+		public Rows(Frame frame, Crop crop, PerturbationAlgorithm reference,
+				int top, int bottom) {
+			this.frame = frame;
+			this.crop = crop;
+			this.reference = reference;
+			this.top = top;
+			this.bottom = bottom;
+		}
+
+		@Override
+		protected Long compute() {
+			if (bottom - top > ROWS_PER_TASK) {
+				final int middle = (top + bottom) >>> 1;
+				final Rows upper = new Rows(frame, crop, reference, top, middle);
+				upper.fork();
+
+				final long lower = new Rows(frame, crop, reference, middle,
+						bottom).compute();
+				return lower + upper.join();
+			}
+
+			final double[] row = new double[width];
+			final int[] columns = new int[width];
+			long count = 0;
+
+			for (int y = top; y < bottom; y++)
+				count += computeRow(y, row, columns);
+
+			return count;
+		}
+
+		private int computeRow(int y, double[] row, int[] columns) {
+			final double[] values = frame.values;
+			final int offset = y * width;
+			final double scale = frame.scale;
+
+			// take what the crop has for this row, every other pixel
+			int taken = 0;
+			int next = width;
+			if (crop != null && y >= crop.y && ((y - crop.y) & 1) == 0
+					&& (y - crop.y) / 2 < crop.rows && crop.columns > 0) {
+				System.arraycopy(crop.values, (y - crop.y) / 2 * crop.columns,
+						row, 0, crop.columns);
+				for (int i = 0; i < crop.columns; i++)
+					values[offset + crop.x + 2 * i] = row[i];
+
+				taken = crop.columns;
+				next = crop.x;
+			}
+
+			// orbits returning within a fraction of a pixel are periodic
+			final double epsilon = scale * Model.PERIODICITY_EPSILON;
+			final boolean check = cardoidBulbCheck
+					&& algorithm != Model.ALGORITHM_BURNING_SHIP_FRACTAL;
+
+			// the pixels left to compute
+			int count = 0;
+			for (int x = 0; x < width; x++) {
+				if (x == next && taken > 0) {
+					next = (x - crop.x) / 2 + 1 < crop.columns ? x + 2 : width;
+					continue;
+				}
+
+				columns[count++] = x;
+			}
+
+			if (frame.perturbation) {
+				// offsets of the pixels from the reference at the point
+				final double dy = -(frame.pointRow + y) * scale;
+
+				for (int i = 0; i < count; i++) {
+					final double dx = (frame.pointColumn + columns[i]) * scale;
+					values[offset + columns[i]] = algorithm == Model.ALGORITHM_ESCAPE_TIME ? reference
+							.escapeTime(dx, dy) : reference
+							.normalisedIterationCount(dx, dy);
+				}
+			} else if (frame.tier == Model.PRECISION_DOUBLE_DOUBLE) {
+				final double cornerXHi = frame.cornerX.doubleValue();
+				final double cornerXLo = Model.getLow(frame.cornerX);
+				final double cornerYHi = frame.cornerY.doubleValue();
+				final double cornerYLo = Model.getLow(frame.cornerY);
+
+				for (int i = 0; i < count; i++) {
+					values[offset + columns[i]] = Model.iterateDoubleDouble(
+							algorithm, cornerXHi, cornerXLo, cornerYHi,
+							cornerYLo, columns[i] * scale, -y * scale,
+							maxRadius, maxIteration, epsilon);
+				}
+			} else {
+				// a pixel's coordinates come from its place on the grid of the
+				// plane, as in Model, so samples an octave apart coincide
+				final double originX = frame.column.doubleValue();
+				final double cy = -(frame.row.doubleValue() + y) * scale;
+
+				// points inside the cardioid and bulb are not iterated
+				int n = 0;
+				for (int i = 0; i < count; i++) {
+					final double cx = (originX + columns[i]) * scale;
+
+					if (check && Algorithm.isInside(cx, cy)) {
+						values[offset + columns[i]] = maxIteration;
+					} else {
+						row[n] = cx;
+						columns[n++] = columns[i];
+					}
+				}
+
+				switch (algorithm) {
+				case Model.ALGORITHM_ESCAPE_TIME:
+					Algorithm.escapeTime(row, cy, n, maxRadius, maxIteration,
+							epsilon, row);
+					break;
+				case Model.ALGORITHM_BURNING_SHIP_FRACTAL:
+					Algorithm.burningShipFractal(row, cy, n, maxRadius,
+							maxIteration, epsilon, row);
+					break;
+				default:
+					Algorithm.normalisedIterationCount(row, cy, n, maxRadius,
+							maxIteration, epsilon, row);
+					break;
+				}
+
+				for (int i = 0; i < n; i++)
+					values[offset + columns[i]] = row[i];
+			}
+
+			return taken;
+		}
+	}
+}